@@ -0,0 +1,71 @@
+/*
+* EqualAreaImage
+* Compilation: javac EqualAreaImage.java
+*
+* A Lambert equal-area cylindrical map (see equalAreaCylinders) that can be
+* looked up by longitude and latitude. This is the inverse of the pixel to
+* longitude/latitude conversion in readEqualAreaMapData, so createMap can read
+* colors straight from the image instead of going through a point file.
+*
+* As in readEqualAreaMapData, orientation 0 is a map along the equator
+* (standard) and 1 is a map along the meridian (oblique).
+*/
+
+import java.awt.image.BufferedImage;
+
+public class EqualAreaImage
+{
+    private final int[] pixels;
+    private final int orientation;
+    private final int width;
+    private final int height;
+
+    public EqualAreaImage(BufferedImage image, int orientation)
+    {
+        if (orientation != 0 && orientation != 1)
+        {
+            throw new IllegalArgumentException("Invalid orientation " + orientation);
+        }
+        this.orientation = orientation;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        // read every pixel once so lookups are a plain array access
+        this.pixels = image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    // returns the color (as from getRGB) of the image at longitude longit and
+    // latitude lat, using the nearest pixel
+    public int getRGB(double longit, double lat)
+    {
+        longit *= (Math.PI/180);
+        lat *= (Math.PI/180);
+
+        double scaledX;
+        double scaledY;
+        if (orientation == 0)
+        {
+            scaledX = lat/Math.PI;
+            scaledY = -1*Math.sin(longit);
+        }
+        else
+        {
+            // rotate the point so the meridian runs along the center line,
+            // then undo the half-turn shift readEqualAreaMapData applies
+            double cosLongit = Math.cos(longit);
+            double x = -1*cosLongit*Math.cos(lat);
+            double y = Math.sin(longit);
+            scaledY = -1*cosLongit*Math.sin(lat);
+            scaledX = Math.atan2(y, x)/Math.PI - 0.5;
+            if (scaledX < -1)
+            {
+                scaledX += 2;
+            }
+        }
+
+        int i = (int) Math.round(scaledX*((width-1)/2.0) + (width/2.0) - 0.5);
+        int j = (int) Math.round(scaledY*((height-1)/2.0) + (height/2.0) - 0.5);
+        i = Math.max(Math.min(i, width-1), 0);
+        j = Math.max(Math.min(j, height-1), 0);
+        return pixels[j*width + i];
+    }
+}
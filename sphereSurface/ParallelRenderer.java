@@ -0,0 +1,229 @@
+/*
+* ParallelRenderer
+* Compilation: javac ParallelRenderer.java
+*
+* Draws a map for createMap using all available processors (the -parallel
+* option). Points are collected with add() in the order they should be drawn,
+* then draw() projects them in parallel and splits the image into horizontal
+* bands that are drawn at the same time. Each band draws every point that
+* touches it in the original order, and no pixel belongs to more than one
+* band, so later points still end up on top of earlier ones and the image is
+* identical to one drawn point by point.
+*/
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class ParallelRenderer
+{
+    // number of points projected by a single task
+    private static final int PROJECT_THRESHOLD = 1 << 14;
+    // height of each band of the image, in pixels
+    private static final int BAND_HEIGHT = 16;
+
+    private final int[] pixels;
+    private final Projection projection;
+    private final int width;
+    private final int height;
+    private final ForkJoinPool pool;
+
+    // the points to draw, in drawing order
+    private double[] longits = new double[1 << 16];
+    private double[] lats = new double[1 << 16];
+    private int[] colors = new int[1 << 16];
+    private int size = 0;
+
+    // draws onto the packed pixels of an image of size width by height
+    public ParallelRenderer(int[] pixels, int width, int height, Projection projection)
+    {
+        this.pixels = pixels;
+        this.projection = projection;
+        this.width = width;
+        this.height = height;
+        this.pool = new ForkJoinPool();
+    }
+
+    // add a point to be drawn on top of all previously added points
+    public void add(double longit, double lat, int color)
+    {
+        if (size == longits.length)
+        {
+            int capacity = 2*size;
+            longits = Arrays.copyOf(longits, capacity);
+            lats = Arrays.copyOf(lats, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+        }
+        longits[size] = longit;
+        lats[size] = lat;
+        colors[size] = color;
+        size++;
+    }
+
+    // fill in the map from an equal-area image, one band per task
+    public void reproject(final EqualAreaImage source)
+    {
+        pool.invoke(new BandAction(new Band()
+        {
+            public void draw(int top, int bottom)
+            {
+                createMap.reproject(source, pixels, width, projection, top, bottom);
+            }
+        }, 0, numBands()));
+    }
+
+    // project and draw all of the added points
+    public void draw()
+    {
+        final int[] xs = new int[size];
+        final int[] ys = new int[size];
+        pool.invoke(new ProjectAction(xs, ys, 0, size));
+
+        // report points outside of the image in order, and stop at the first
+        // one that can't be drawn, just as drawing them one by one would
+        for (int i = 0; i < size; i++)
+        {
+            createMap.checkPosition(xs[i], ys[i], longits[i], lats[i], width, height);
+            if (xs[i] < 0 || xs[i] >= width || ys[i] < 0 || ys[i] >= height)
+            {
+                throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+            }
+        }
+
+        // list the points touching each band, keeping them in order. A point
+        // covers at most three rows, so it touches at most two bands.
+        int bands = numBands();
+        final int[] bandStarts = new int[bands + 1];
+        for (int i = 0; i < size; i++)
+        {
+            int first = firstBand(ys[i]);
+            int last = lastBand(ys[i]);
+            bandStarts[first + 1]++;
+            if (last != first)
+            {
+                bandStarts[last + 1]++;
+            }
+        }
+        for (int b = 0; b < bands; b++)
+        {
+            bandStarts[b + 1] += bandStarts[b];
+        }
+        final int[] bandPoints = new int[bandStarts[bands]];
+        int[] next = Arrays.copyOf(bandStarts, bands);
+        for (int i = 0; i < size; i++)
+        {
+            int first = firstBand(ys[i]);
+            int last = lastBand(ys[i]);
+            bandPoints[next[first]++] = i;
+            if (last != first)
+            {
+                bandPoints[next[last]++] = i;
+            }
+        }
+
+        pool.invoke(new BandAction(new Band()
+        {
+            public void draw(int top, int bottom)
+            {
+                int band = top / BAND_HEIGHT;
+                for (int k = bandStarts[band]; k < bandStarts[band + 1]; k++)
+                {
+                    int i = bandPoints[k];
+                    createMap.draw3by3Point(xs[i], ys[i], colors[i], pixels, width, top, bottom);
+                }
+            }
+        }, 0, bands));
+    }
+
+    private int numBands()
+    {
+        return (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+    }
+
+    // the bands containing the top and bottom rows of the point at row y
+    private int firstBand(int y)
+    {
+        return Math.max(y-1, 0) / BAND_HEIGHT;
+    }
+
+    private int lastBand(int y)
+    {
+        return Math.min(y+1, height-1) / BAND_HEIGHT;
+    }
+
+    // projects the points from start up to (but not including) end
+    private class ProjectAction extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] xs;
+        private final int[] ys;
+        private final int start;
+        private final int end;
+
+        ProjectAction(int[] xs, int[] ys, int start, int end)
+        {
+            this.xs = xs;
+            this.ys = ys;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute()
+        {
+            if (end - start <= PROJECT_THRESHOLD)
+            {
+                double[] xy = new double[2];
+                for (int i = start; i < end; i++)
+                {
+                    projection.project(longits[i], lats[i], xy);
+                    xs[i] = (int)Math.round(xy[0]);
+                    ys[i] = (int)Math.round(xy[1]);
+                }
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new ProjectAction(xs, ys, start, middle),
+                      new ProjectAction(xs, ys, middle, end));
+        }
+    }
+
+    // draws the rows from top up to (but not including) bottom
+    private interface Band
+    {
+        void draw(int top, int bottom);
+    }
+
+    // draws the bands from start up to (but not including) end, one task per band
+    private class BandAction extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Band band;
+        private final int start;
+        private final int end;
+
+        BandAction(Band band, int start, int end)
+        {
+            this.band = band;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute()
+        {
+            if (end - start <= 1)
+            {
+                if (end > start)
+                {
+                    int top = start * BAND_HEIGHT;
+                    band.draw(top, Math.min(top + BAND_HEIGHT, height));
+                }
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new BandAction(band, start, middle),
+                      new BandAction(band, middle, end));
+        }
+    }
+}
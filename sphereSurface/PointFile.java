@@ -0,0 +1,373 @@
+/*
+* PointFile
+* Compilation: javac PointFile.java
+* Execution: java PointFile TextInputFilename BinaryOutputFilename
+* Example: java PointFile pointData/earthInColor.txt pointData/earthInColor.pts
+*
+* A binary, columnar version of the point data text files read by createMap
+* and createMapStdDraw. The renderers check for the header below and, if it is
+* present, memory-map the columns instead of parsing text with a Scanner, so
+* reading a point costs a few array lookups and no allocation.
+*
+* Running this class converts an existing text point file. Lines with three
+* values ("longit lat color") keep the color as given; lines with six values
+* ("longit lat red green blue magnitude", the star format) have the color
+* packed as 0xRRGGBB and also store the magnitude.
+*
+* File layout (all values little-endian):
+*   bytes  0-3   magic number 0x504E5453 ("PNTS")
+*   bytes  4-7   format version (1)
+*   bytes  8-11  flags; bit 0 set if there is a magnitude column
+*   bytes 12-15  unused
+*   bytes 16-23  number of points n
+*   bytes 24-31  unused
+* followed by the columns, each stored contiguously:
+*   n doubles  longitude (the first value on a text line)
+*   n doubles  latitude (the second value on a text line)
+*   n ints     color, padded with 4 bytes if n is odd
+*   n doubles  magnitude (only if the flag is set)
+*/
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+public final class PointFile
+{
+    public static final int MAGIC = 0x504E5453;
+    public static final int VERSION = 1;
+    public static final int FLAG_MAGNITUDE = 1;
+    public static final int HEADER_SIZE = 32;
+
+    private final int size;
+    private final boolean hasMagnitude;
+    private final DoubleBuffer longits;
+    private final DoubleBuffer lats;
+    private final IntBuffer colors;
+    private final DoubleBuffer magnitudes;
+
+    private PointFile(int size, boolean hasMagnitude, DoubleBuffer longits,
+                      DoubleBuffer lats, IntBuffer colors, DoubleBuffer magnitudes)
+    {
+        this.size = size;
+        this.hasMagnitude = hasMagnitude;
+        this.longits = longits;
+        this.lats = lats;
+        this.colors = colors;
+        this.magnitudes = magnitudes;
+    }
+
+    // returns true if the file starts with the binary point file header, so
+    // that the renderers can fall back to the text format otherwise
+    public static boolean isPointFile(File file)
+    {
+        if (file.length() < HEADER_SIZE)
+        {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file)))
+        {
+            return Integer.reverseBytes(in.readInt()) == MAGIC;
+        } catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    // memory-map the columns of a binary point file
+    public static PointFile open(File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining())
+            {
+                if (channel.read(header) < 0)
+                {
+                    break;
+                }
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC)
+            {
+                throw new IllegalArgumentException("File " + file + " is not a point file");
+            }
+            if (header.getInt(4) != VERSION)
+            {
+                throw new IllegalArgumentException("File " + file + " has unsupported version "
+                                                   + header.getInt(4));
+            }
+            boolean hasMagnitude = (header.getInt(8) & FLAG_MAGNITUDE) != 0;
+            long count = header.getLong(16);
+            // each column is mapped separately, so the limit is a single
+            // column of doubles fitting in one mapping
+            if (count < 0 || count > Integer.MAX_VALUE / 8)
+            {
+                throw new IllegalArgumentException("File " + file + " has invalid point count " + count);
+            }
+            int n = (int) count;
+
+            long offset = HEADER_SIZE;
+            DoubleBuffer longits = mapDoubles(channel, offset, n);
+            offset += 8L*n;
+            DoubleBuffer lats = mapDoubles(channel, offset, n);
+            offset += 8L*n;
+            IntBuffer colors = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4L*n)
+                                      .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            offset += colorColumnBytes(n);
+            DoubleBuffer magnitudes = null;
+            if (hasMagnitude)
+            {
+                magnitudes = mapDoubles(channel, offset, n);
+            }
+            // the mappings stay valid after the channel is closed
+            return new PointFile(n, hasMagnitude, longits, lats, colors, magnitudes);
+        }
+    }
+
+    private static DoubleBuffer mapDoubles(FileChannel channel, long offset, int n) throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, 8L*n)
+                      .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    // the color column is padded so that the magnitude column stays 8-byte aligned
+    private static long colorColumnBytes(long n)
+    {
+        return 4L*n + ((n % 2 == 0) ? 0 : 4);
+    }
+
+    // getters
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean hasMagnitude()
+    {
+        return hasMagnitude;
+    }
+
+    public double getLongit(int i)
+    {
+        return longits.get(i);
+    }
+
+    public double getLat(int i)
+    {
+        return lats.get(i);
+    }
+
+    public int getColor(int i)
+    {
+        return colors.get(i);
+    }
+
+    public double getMagnitude(int i)
+    {
+        if (!hasMagnitude)
+        {
+            throw new IllegalStateException("Point file has no magnitude column");
+        }
+        return magnitudes.get(i);
+    }
+
+    // Writes a binary point file. Since the number of points isn't known in
+    // advance, each column is streamed to its own temporary file and the
+    // columns are joined behind the header on close(). Without a magnitude
+    // column it is a PointSink, for readEqualAreaMapData and generateParallels.
+    public static class Writer implements PointSink
+    {
+        private static final int BUFFER_SIZE = 1 << 16;
+
+        private final File target;
+        private final boolean hasMagnitude;
+        private final File[] columnFiles;
+        private final FileChannel[] columns;
+        private final ByteBuffer[] buffers;
+        private long count = 0;
+
+        public Writer(File target, boolean hasMagnitude) throws IOException
+        {
+            this.target = target;
+            this.hasMagnitude = hasMagnitude;
+            int numColumns = hasMagnitude ? 4 : 3;
+            columnFiles = new File[numColumns];
+            columns = new FileChannel[numColumns];
+            buffers = new ByteBuffer[numColumns];
+            File dir = target.getAbsoluteFile().getParentFile();
+            for (int i = 0; i < numColumns; i++)
+            {
+                columnFiles[i] = File.createTempFile(target.getName() + ".col" + i + ".", ".tmp", dir);
+                columns[i] = FileChannel.open(columnFiles[i].toPath(), StandardOpenOption.WRITE);
+                buffers[i] = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        public void write(double longit, double lat, int color) throws IOException
+        {
+            if (hasMagnitude)
+            {
+                throw new IllegalStateException("Point file needs a magnitude for every point");
+            }
+            putDouble(0, longit);
+            putDouble(1, lat);
+            putInt(2, color);
+            count++;
+        }
+
+        public void write(double longit, double lat, int color, double magnitude) throws IOException
+        {
+            if (!hasMagnitude)
+            {
+                throw new IllegalStateException("Point file has no magnitude column");
+            }
+            putDouble(0, longit);
+            putDouble(1, lat);
+            putInt(2, color);
+            putDouble(3, magnitude);
+            count++;
+        }
+
+        private void putDouble(int column, double value) throws IOException
+        {
+            if (buffers[column].remaining() < 8)
+            {
+                flush(column);
+            }
+            buffers[column].putDouble(value);
+        }
+
+        private void putInt(int column, int value) throws IOException
+        {
+            if (buffers[column].remaining() < 4)
+            {
+                flush(column);
+            }
+            buffers[column].putInt(value);
+        }
+
+        private void flush(int column) throws IOException
+        {
+            ByteBuffer buffer = buffers[column];
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                columns[column].write(buffer);
+            }
+            buffer.clear();
+        }
+
+        public long size()
+        {
+            return count;
+        }
+
+        // write the header and join the columns into the target file
+        public void close() throws IOException
+        {
+            if (count % 2 != 0)
+            {
+                putInt(2, 0);
+            }
+            for (int i = 0; i < columns.length; i++)
+            {
+                flush(i);
+                columns[i].close();
+            }
+
+            try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                header.putInt(hasMagnitude ? FLAG_MAGNITUDE : 0);
+                header.putInt(0);
+                header.putLong(count);
+                header.putLong(0);
+                header.flip();
+                while (header.hasRemaining())
+                {
+                    out.write(header);
+                }
+                for (File columnFile : columnFiles)
+                {
+                    try (FileChannel in = FileChannel.open(columnFile.toPath(), StandardOpenOption.READ))
+                    {
+                        long position = 0;
+                        long length = in.size();
+                        while (position < length)
+                        {
+                            position += in.transferTo(position, length - position, out);
+                        }
+                    }
+                }
+            } finally
+            {
+                for (File columnFile : columnFiles)
+                {
+                    Files.deleteIfExists(columnFile.toPath());
+                }
+            }
+        }
+    }
+
+    // converts a text point file into a binary point file
+    public static void main(String[] args) throws IOException
+    {
+        File input = new File(args[0]);
+        File output = new File(args[1]);
+
+        Writer writer = null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(input)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                String[] items = line.trim().split("\\s+");
+                if (items.length < 3)
+                {
+                    continue;
+                }
+                // the first line decides whether this is the star format
+                if (writer == null)
+                {
+                    writer = new Writer(output, items.length >= 6);
+                }
+                double longit = Double.parseDouble(items[0]);
+                double lat = Double.parseDouble(items[1]);
+                if (items.length >= 6)
+                {
+                    int red = Integer.parseInt(items[2]);
+                    int green = Integer.parseInt(items[3]);
+                    int blue = Integer.parseInt(items[4]);
+                    double mag = Double.parseDouble(items[5]);
+                    writer.write(longit, lat, (red << 16) | (green << 8) | blue, mag);
+                }
+                else
+                {
+                    writer.write(longit, lat, Integer.parseInt(items[2]));
+                }
+            }
+        }
+        if (writer == null)
+        {
+            writer = new Writer(output, false);
+        }
+        writer.close();
+        System.err.println("Wrote " + writer.size() + " points to " + output);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+* PointSink
+* Compilation: javac PointSink.java
+*
+* Somewhere the points made by readEqualAreaMapData and generateParallels
+* are written, one "longit lat color" point at a time, so that both programs
+* can write either a text point file or a binary one the same way.
+*
+* Implemented by PointTextWriter, which writes text lines straight into a
+* large buffer without making a String per point, and PointFile.Writer,
+* which writes a binary point file.
+*/
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public interface PointSink extends AutoCloseable
+{
+    void write(double longit, double lat, int color) throws IOException;
+
+    // the number of points written so far
+    long size();
+
+    void close() throws IOException;
+
+    // a binary point file at pointsFile, or standard output as text if
+    // pointsFile is null, with precision digits after the decimal point (or
+    // as many as each value needs, as with println, if precision is negative)
+    static PointSink open(File pointsFile, int precision) throws IOException
+    {
+        if (pointsFile != null)
+        {
+            return new PointFile.Writer(pointsFile, false);
+        }
+        return new PointTextWriter(new FileOutputStream(FileDescriptor.out).getChannel(), precision);
+    }
+}
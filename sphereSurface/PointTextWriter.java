@@ -0,0 +1,176 @@
+/*
+* PointTextWriter
+* Compilation: javac PointTextWriter.java
+*
+* Writes points as the lines of a text point file ("longit lat color") to a
+* channel, such as standard output. Each line is formatted straight into a
+* large direct buffer as bytes, which is written out whenever it fills up, so
+* writing a point creates no Strings and takes no locks, unlike printing it
+* with System.out.println.
+*
+* With a precision of zero or more, every value is written with that many
+* digits after the decimal point, which is quicker than writing it in full
+* and makes smaller files. With a negative precision the values are written
+* exactly as println would write them.
+*/
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+public final class PointTextWriter implements PointSink
+{
+    private static final int BUFFER_SIZE = 1 << 20;
+    // room for the longest line: two values of at most 40 characters each
+    // and an int
+    private static final int MAX_LINE = 128;
+    // the most digits after the decimal point
+    private static final int MAX_PRECISION = 18;
+    private static final byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final int precision;
+    // 10^precision, or 1 when precision is negative
+    private final double scale;
+    private final byte[] digits = new byte[20];
+    private final StringBuilder text = new StringBuilder(32);
+    private long count = 0;
+
+    public PointTextWriter(WritableByteChannel channel, int precision)
+    {
+        if (precision > MAX_PRECISION)
+        {
+            throw new IllegalArgumentException("Precision must be at most " + MAX_PRECISION);
+        }
+        this.channel = channel;
+        this.precision = precision;
+        this.scale = Math.pow(10, Math.max(precision, 0));
+    }
+
+    public void write(double longit, double lat, int color) throws IOException
+    {
+        if (buffer.remaining() < MAX_LINE)
+        {
+            flush();
+        }
+        putDouble(longit);
+        buffer.put((byte) ' ');
+        putDouble(lat);
+        buffer.put((byte) ' ');
+        putLong(color);
+        buffer.put(NEW_LINE);
+        count++;
+    }
+
+    // write a span line, "startLongit startLat endLongit endLat color" (see
+    // readEqualAreaMapData -spans)
+    public void writeSpan(double startLongit, double startLat, double endLongit, double endLat,
+                          int color) throws IOException
+    {
+        if (buffer.remaining() < 2*MAX_LINE)
+        {
+            flush();
+        }
+        putDouble(startLongit);
+        buffer.put((byte) ' ');
+        putDouble(startLat);
+        buffer.put((byte) ' ');
+        putDouble(endLongit);
+        buffer.put((byte) ' ');
+        putDouble(endLat);
+        buffer.put((byte) ' ');
+        putLong(color);
+        buffer.put(NEW_LINE);
+        count++;
+    }
+
+    public long size()
+    {
+        return count;
+    }
+
+    public void close() throws IOException
+    {
+        flush();
+        channel.close();
+    }
+
+    // write out everything buffered so far
+    public void flush() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void putDouble(double value)
+    {
+        double scaled = Math.abs(value)*scale;
+        // values too large for a long, and NaN and infinity, are written in
+        // full
+        if (precision < 0 || !(scaled < 9.0e18))
+        {
+            putText(value);
+            return;
+        }
+        long rounded = Math.round(scaled);
+        if (value < 0 && rounded != 0)
+        {
+            buffer.put((byte) '-');
+        }
+        long whole = rounded;
+        for (int p = 0; p < precision; p++)
+        {
+            whole /= 10;
+        }
+        putLong(whole);
+        if (precision > 0)
+        {
+            buffer.put((byte) '.');
+            long fraction = rounded;
+            for (int p = precision - 1; p >= 0; p--)
+            {
+                digits[p] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            buffer.put(digits, 0, precision);
+        }
+    }
+
+    // write a value in full, as Double.toString would, without making a
+    // String
+    private void putText(double value)
+    {
+        text.setLength(0);
+        text.append(value);
+        for (int k = 0; k < text.length(); k++)
+        {
+            buffer.put((byte) text.charAt(k));
+        }
+    }
+
+    private void putLong(long value)
+    {
+        if (value < 0)
+        {
+            buffer.put((byte) '-');
+        }
+        else
+        {
+            value = -value;
+        }
+        // work with the negative value, which can hold Long.MIN_VALUE
+        int n = digits.length;
+        do
+        {
+            digits[--n] = (byte) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        buffer.put(digits, n, digits.length - n);
+    }
+}
@@ -0,0 +1,442 @@
+/*
+* Projection
+* Compilation: javac Projection.java
+*
+* The map projections used by createMap. Each map type has its own subclass,
+* chosen once per map with forType(), and project() computes both the x and
+* y position of a point in one call so that any work shared between the two
+* coordinates is only done once.
+*
+* unproject() goes the other way, from a position on the map back to the
+* longitude and latitude drawn there, which lets createMap fill in a map by
+* walking its pixels rather than drawing points.
+*
+* The map types are the same as in createMap:
+* 0 is Equirectangular
+* 1 is Mercator
+* 2 is Lagrange Conformal
+* 3 is Eckert II
+* 4 is Kavrayskiy VII
+* 5 is two Stereographic hemispheres (centered at the poles) placed together.
+* 6 is the gnomonic cube
+*
+* Note that, as in the rest of sphereSurface, longit is the north-south
+* position of a point (-90 to 90) and lat is the east-west one (-180 to 180).
+*/
+
+public abstract class Projection
+{
+    // size of the map being drawn
+    protected final int width;
+    protected final int height;
+
+    protected Projection(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+    }
+
+    // calculates the position of the point at longitude longit and latitude
+    // lat, storing the x position in xy[0] and the y position in xy[1]
+    public abstract void project(double longit, double lat, double[] xy);
+
+    // calculates the longitude and latitude of the point drawn at position
+    // (x, y), storing them in longLat[0] and longLat[1]. Returns false if
+    // (x, y) is not part of the map.
+    public abstract boolean unproject(double x, double y, double[] longLat);
+
+    // returns the projection for map type type on a map of size width by height
+    public static Projection forType(int type, int width, int height)
+    {
+        switch (type)
+        {
+            case 6:
+                return new GnomonicCube(width, height);
+            case 5:
+                return new StereographicHemispheres(width, height);
+            case 4:
+                return new KavrayskiyVII(width, height);
+            case 3:
+                return new EckertII(width, height);
+            case 2:
+                return new Lagrange(width, height);
+            case 1:
+                return new Mercator(width, height);
+            case 0:
+                return new Equirectangular(width, height);
+            default:
+                throw new IllegalArgumentException("Invalid Map Type");
+        }
+    }
+
+    // calculates great circle distance between points (long1, lat1) and (long2, lat2)
+    private static double distance(double long1, double lat1, double long2, double lat2)
+    {
+        double a = Math.sin((long2-long1)*(Math.PI/180)/2);
+        double b = Math.sin((lat2-lat1)*(Math.PI/180)/2);
+        double c = b*b*Math.cos(long1*(Math.PI/180))*Math.cos(long2*(Math.PI/180));
+        return 2*Math.asin(Math.sqrt(a*a + c));
+    }
+
+    // wraps a latitude in degrees into the range [-180, 180)
+    private static double normalizeLat(double lat)
+    {
+        lat = (lat + 180) % 360;
+        if (lat < 0)
+        {
+            lat += 360;
+        }
+        return lat - 180;
+    }
+
+    // type 0
+    private static final class Equirectangular extends Projection
+    {
+        Equirectangular(int width, int height)
+        {
+            super(width, height);
+        }
+
+        public void project(double longit, double lat, double[] xy)
+        {
+            xy[0] = (lat/360.0)*(width-1) + (width-1)/2.0;
+            xy[1] = -1*(longit/180)*(height-1) + (height-1)/2.0;
+        }
+
+        public boolean unproject(double x, double y, double[] longLat)
+        {
+            double lat = (x - (width-1)/2.0)*360.0/(width-1);
+            double longit = ((height-1)/2.0 - y)*180/(height-1);
+            longLat[0] = longit;
+            longLat[1] = lat;
+            return Math.abs(lat) <= 180 && Math.abs(longit) <= 90;
+        }
+    }
+
+    // type 1
+    private static final class Mercator extends Projection
+    {
+        Mercator(int width, int height)
+        {
+            super(width, height);
+        }
+
+        public void project(double longit, double lat, double[] xy)
+        {
+            xy[0] = ((lat/360.0)*(width-1)) + (width-1)/2.0;
+
+            longit *= (Math.PI/180);
+            double y1 = Math.log(Math.tan(0.25*Math.PI + 0.5*longit));
+            y1 *= -1*height/4.0;
+            y1 += height/2.0;
+            y1 = Math.max(Math.min(y1,height-1),0);
+            xy[1] = y1;
+        }
+
+        public boolean unproject(double x, double y, double[] longLat)
+        {
+            double lat = (x - (width-1)/2.0)*360.0/(width-1);
+            double longit = 2*Math.atan(Math.exp((height/2.0 - y)/(height/4.0))) - 0.5*Math.PI;
+            longLat[0] = longit*180/Math.PI;
+            longLat[1] = lat;
+            return Math.abs(lat) <= 180 && y >= 0 && y <= height-1;
+        }
+    }
+
+    // type 2
+    private static final class Lagrange extends Projection
+    {
+        Lagrange(int width, int height)
+        {
+            super(width, height);
+        }
+
+        public void project(double longit, double lat, double[] xy)
+        {
+            longit *= (Math.PI/180);
+            lat *= (Math.PI/180);
+            double sinPhiPrime = Math.tan(longit/2);
+            double cosPhiPrime = Math.sqrt(1-sinPhiPrime*sinPhiPrime);//Math.cos(Math.asin(sinPhiPrime));
+            double cosHalfLat = Math.cos(lat/2);
+            xy[0] = ((height-1)/2.0)*cosPhiPrime*Math.sin(lat/2)/(1
+                        + cosPhiPrime*cosHalfLat) + (width/2);
+            xy[1] = -1*((height/2.0-1))*sinPhiPrime/(1 + cosPhiPrime*cosHalfLat) + (height/2);
+        }
+
+        // the Lagrange projection is a stereographic projection of the
+        // sphere with its latitudes halved and its longitudes squeezed so
+        // that sin(longit') = tan(longit/2), so undo the stereographic
+        // projection and then the squeeze
+        public boolean unproject(double x, double y, double[] longLat)
+        {
+            double u = (x - (width/2))/((height-1)/2.0);
+            double v = -1*(y - (height/2))/(height/2.0-1);
+            double rho = Math.sqrt(u*u + v*v);
+            if (rho > 1)
+            {
+                return false;
+            }
+            if (rho == 0)
+            {
+                longLat[0] = 0;
+                longLat[1] = 0;
+                return true;
+            }
+            double c = 2*Math.atan(rho);
+            double sinPhiPrime = v*Math.sin(c)/rho;
+            double halfLat = Math.atan2(u*Math.sin(c), rho*Math.cos(c));
+            longLat[0] = 2*Math.atan(sinPhiPrime)*180/Math.PI;
+            longLat[1] = 2*halfLat*180/Math.PI;
+            return true;
+        }
+    }
+
+    // type 3
+    private static final class EckertII extends Projection
+    {
+        private final double scaleX;
+        private final double scaleY;
+
+        EckertII(int width, int height)
+        {
+            super(width, height);
+            scaleX = ((width-2)/2.0)/(2*Math.PI);
+            scaleY = ((width-1)/2.0)/2;
+        }
+
+        public void project(double longit, double lat, double[] xy)
+        {
+            boolean onEquator = (longit == 0);
+            longit *= (Math.PI/180);
+            lat *= (Math.PI/180);
+            double root = Math.sqrt((4 - 3*Math.sin(Math.abs(longit))));
+            xy[0] = scaleX*lat*root + width/2.0;
+            if (onEquator)
+            {
+                xy[1] = height/2.0;
+            }
+            else
+            {
+                double y3 = (2 - root)*(longit/Math.abs(longit));
+                xy[1] = -1*scaleY * y3 + height/2.0;
+            }
+        }
+
+        public boolean unproject(double x, double y, double[] longLat)
+        {
+            double t = (height/2.0 - y)/scaleY;
+            if (Math.abs(t) > 1)
+            {
+                return false;
+            }
+            double root = 2 - Math.abs(t);
+            double longit = Math.asin((4 - root*root)/3);
+            if (t < 0)
+            {
+                longit = -longit;
+            }
+            double lat = (x - width/2.0)/(scaleX*root);
+            longLat[0] = longit*180/Math.PI;
+            longLat[1] = lat*180/Math.PI;
+            return Math.abs(lat) <= Math.PI;
+        }
+    }
+
+    // type 4
+    private static final class KavrayskiyVII extends Projection
+    {
+        private final double scale;
+
+        KavrayskiyVII(int width, int height)
+        {
+            super(width, height);
+            scale = ((width-2)/2.0)*Math.sqrt(3)/(Math.PI*1.5);
+        }
+
+        public void project(double longit, double lat, double[] xy)
+        {
+            longit *= (Math.PI/180);
+            lat *= (Math.PI/180);
+            xy[0] = scale*1.5*lat*Math.sqrt((Math.PI*Math.PI)/3 - longit*longit)/Math.PI+width/2.0;
+            xy[1] = -1*scale*longit+height/2.0;
+        }
+
+        public boolean unproject(double x, double y, double[] longLat)
+        {
+            double longit = (height/2.0 - y)/scale;
+            if (Math.abs(longit) > Math.PI/2)
+            {
+                return false;
+            }
+            double lat = (x - width/2.0)*Math.PI/(scale*1.5*Math.sqrt((Math.PI*Math.PI)/3 - longit*longit));
+            longLat[0] = longit*180/Math.PI;
+            longLat[1] = lat*180/Math.PI;
+            return Math.abs(lat) <= Math.PI;
+        }
+    }
+
+    // type 5
+    private static final class StereographicHemispheres extends Projection
+    {
+        private final double scale;
+
+        StereographicHemispheres(int width, int height)
+        {
+            super(width, height);
+            scale = Math.min((height-1)/2.0, (width-1)/4.0);
+        }
+
+        public void project(double longit, double lat, double[] xy)
+        {
+            double phi;
+            if (longit < 0) phi = -longit;
+            else phi = longit;
+            phi += 90;
+            phi *= (Math.PI/180);
+            double theta = lat * (Math.PI/180);
+            double r = scale * (1/Math.tan(phi/2.0));
+            if (longit > 0)
+            {
+                xy[0] = (int) (-1*r*Math.cos(theta) + (width-1)/2 +-1*scale);
+            }
+            else
+            {
+                xy[0] = (int) (r*Math.cos(theta) + (width-1)/2 + scale);
+            }
+            xy[1] = (int) (r*Math.sin(theta) + (height-1)/2);
+        }
+
+        // the northern hemisphere is on the left, the southern on the right
+        public boolean unproject(double x, double y, double[] longLat)
+        {
+            boolean north = x < (width-1)/2;
+            double dx;
+            if (north)
+            {
+                dx = -1*(x - ((width-1)/2 + -1*scale));
+            }
+            else
+            {
+                dx = x - ((width-1)/2 + scale);
+            }
+            double dy = y - (height-1)/2;
+            double r = Math.sqrt(dx*dx + dy*dy);
+            if (r > scale)
+            {
+                return false;
+            }
+            // r = scale*cot(phi/2), where phi is 90 degrees past the pole
+            double phi = 2*Math.atan2(scale, r)*180/Math.PI - 90;
+            longLat[0] = north ? phi : -phi;
+            longLat[1] = Math.atan2(dy, dx)*180/Math.PI;
+            return true;
+        }
+    }
+
+    // type 6
+    private static final class GnomonicCube extends Projection
+    {
+        private final int sideLength;
+
+        GnomonicCube(int width, int height)
+        {
+            super(width, height);
+            sideLength = Math.min(((width-1)/4),((height-1)/3));
+        }
+
+        public void project(double longit, double lat, double[] xy)
+        {
+            int latOffset = 225;
+            lat += latOffset;
+            double xCenter = 0.0;
+            double yCenter = 0.0;
+            double longCenter;
+            double latCenter;
+            double normalLat = lat;
+            while (normalLat < 0)
+            {
+                normalLat += 360;
+            }
+            double targetLat = (normalLat)-(normalLat%90) + 45;
+            int i;
+            //-135 puts it above the second square
+            // 45 above the 4th square
+            double poleLatChange = 45;
+            if (distance(-45,targetLat,longit,lat) > Math.PI/2) // north
+            {
+                lat += poleLatChange;
+                i = -1;
+                xCenter = 3.5*sideLength;
+                yCenter = 0.5*sideLength;
+                longCenter = 90.0;
+                latCenter = 0.0;
+            }
+            else if (distance(45,targetLat,longit,lat) > Math.PI/2) // south
+            {
+                lat += poleLatChange;
+                i = -2;
+                xCenter = 3.5*sideLength;
+                yCenter = 2.5*sideLength;
+                longCenter = -90.0;
+                latCenter = 0.0;
+            }
+            else
+            {
+                i = ((int) Math.floor(normalLat/90))%4;
+                longCenter = 0.0;
+                latCenter = 90*i + 45;
+                xCenter = (i+0.5)*sideLength;
+                yCenter = 1.5*sideLength;
+            }
+            double sinLongCenter = Math.sin(longCenter*(Math.PI/180));
+            double cosLongCenter = Math.cos(longCenter*(Math.PI/180));
+            double sinLongit = Math.sin(longit*(Math.PI/180));
+            double cosLongit = Math.cos(longit*(Math.PI/180));
+            double cosLatDiff = Math.cos((lat-latCenter)*(Math.PI/180));
+            double cosC = sinLongCenter*sinLongit + cosLongCenter*cosLongit*cosLatDiff;
+            xy[0] = xCenter + sideLength/2*cosLongit*Math.sin((lat-latCenter)*(Math.PI/180))/cosC;
+            xy[1] = yCenter - sideLength/(2)*(cosLongCenter*sinLongit
+                   - sinLongCenter*cosLongit*cosLatDiff)/cosC;
+        }
+
+        // the four equatorial faces are in the middle row, with the north
+        // and south faces above and below the fourth one
+        public boolean unproject(double x, double y, double[] longLat)
+        {
+            if (x < 0 || y < 0)
+            {
+                return false;
+            }
+            int column = (int) (x/sideLength);
+            int row = (int) (y/sideLength);
+            int halfSide = sideLength/2;
+            double u = (x - (column+0.5)*sideLength)/halfSide;
+            double v = (y - (row+0.5)*sideLength)/halfSide;
+            double longit;
+            double lat;
+            if (row == 1 && column < 4)
+            {
+                double latCenter = 90*column + 45;
+                lat = latCenter + Math.atan(u)*180/Math.PI - 225;
+                longit = Math.atan(-v/Math.sqrt(1 + u*u))*180/Math.PI;
+            }
+            else if (row == 0 && column == 3) // north
+            {
+                longit = Math.atan2(1, Math.sqrt(u*u + v*v))*180/Math.PI;
+                lat = Math.atan2(u, v)*180/Math.PI - 270;
+            }
+            else if (row == 2 && column == 3) // south
+            {
+                longit = -Math.atan2(1, Math.sqrt(u*u + v*v))*180/Math.PI;
+                lat = Math.atan2(u, -v)*180/Math.PI - 270;
+            }
+            else
+            {
+                return false;
+            }
+            longLat[0] = longit;
+            longLat[1] = normalizeLat(lat);
+            return true;
+        }
+    }
+}
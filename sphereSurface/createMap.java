@@ -5,8 +5,10 @@
 *
 * createMap
 * Compilation: javac createMap.java
-* Execution: java createMap SourceFilename MapType OutputFilename NumInputs [Input Files]
+* Execution: java createMap SourceFilename MapType OutputFilename [-parallel] [-reproject EqualAreaFilename Orientation] NumInputs [Input Files]
 * Example: java createMap blank.png 1 myMercator 2 earthInColor.txt parallels.txt
+* Example: java createMap blank.png 4 earthKavrayskiyVII -reproject equalAreaCylinders/earthStandard.png 0 1 parallels.txt
+* Example: java createMap blank.png 1 myMercator -parallel 2 earthInColor.txt parallels.txt
 *
 * For small-scale use, this long string of command line inputs is perfectly
 * fine, but if one wanted to make this more accessible it would be best to
@@ -23,6 +25,33 @@
 * includes the extension). Points in earlier files are drawn first, so in the
 * example above the parallels are drawn on top of the world countries.
 *
+* Any input file may instead be a binary point file created with PointFile
+* (java PointFile pointData/earthInColor.txt pointData/earthInColor.pts). These
+* are detected automatically and memory-mapped, which is much faster than
+* parsing the text for large point sets.
+*
+* An input file may also be a span file made by readEqualAreaMapData -spans,
+* where each line is a span of one color, "startLongit startLat endLongit
+* endLat color", along a great circle. Span files are recognized by having
+* five values on a line. Each span is drawn as points along the arc between
+* its ends, halving the arc until neighbouring points are at most a couple of
+* pixels apart on the map, so one line can stand in for a long run of points.
+*
+* With -reproject, the map is first filled in directly from a Lambert
+* equal-area cylindrical image (such as those in equalAreaCylinders), with
+* Orientation 0 for a standard image and 1 for an oblique one, as in
+* readEqualAreaMapData. Every pixel of the output that is part of the map is
+* converted back to a longitude and latitude and colored from the image, so no
+* point file is needed and there are no gaps between points. Any input files
+* are then drawn on top as usual, and NumInputs may be left off if there are
+* none.
+*
+* With -parallel, the map is drawn using all available processors: the points
+* from every input file are collected, projected in parallel, and then drawn
+* in horizontal bands of the image at the same time. Within each band the
+* points are still drawn in order, so the result is the same as without the
+* option. -parallel may be combined with -reproject, in either order.
+*
 */
 
 // Map Types:
@@ -33,277 +62,144 @@
 // 4 is Kavrayskiy VII
 // 5 is two Stereographic hemispheres (centered at the poles) placed together.
 // 6 is the gnomonic cube
+// The projections themselves are implemented in Projection.java.
 
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
-import java.io.FileNotFoundException;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 public class createMap
 {
 
-    // calculates great circle distance between points (long1, lat1) and (long2, lat2)
-    private static double distance(double long1, double lat1, double long2, double lat2)
+    // copy an image into one backed by a DataBufferInt, so that pixels can be
+    // written as packed ints straight into its data array. Images without
+    // transparency become TYPE_INT_RGB so the saved png stays the same kind.
+    private static BufferedImage toIntImage(BufferedImage source)
     {
-        double a = Math.sin((long2-long1)*(Math.PI/180)/2);
-        double b = Math.sin((lat2-lat1)*(Math.PI/180)/2);
-        double c = b*b*Math.cos(long1*(Math.PI/180))*Math.cos(long2*(Math.PI/180));
-        return 2*Math.asin(Math.sqrt(a*a + c));
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB
+                                                     : BufferedImage.TYPE_INT_RGB;
+        BufferedImage image = new BufferedImage(width, height, type);
+        source.getRGB(0, 0, width, height, getPixels(image), 0, width);
+        return image;
     }
 
-    // calculates the desired x position of the point at longitude longit and
-    // latitude lat on a map of size width by height, given that the map
-    // projection is of type type
-    private static double getX(double longit, double lat, int width, int height, int type)
+    // the packed pixels of an image created by toIntImage, row by row
+    private static int[] getPixels(BufferedImage image)
     {
-        switch (type)
-        {
-            case 6:
-                int latOffset = 225;
-                lat += latOffset;
-                int sideLength = Math.min(((width-1)/4),((height-1)/3));
-                double xCenter = 0.0;
-                double yCenter = 0.0;
-                double longCenter;
-                double latCenter;
-                double normalLat = lat;
-                while (normalLat < 0)
-                {
-                    normalLat += 360;
-                }
-                double targetLat = (normalLat)-(normalLat%90) + 45;
-                int i;
-                //-135 puts it above the second square
-                // 45 above the 4th square
-                double poleLatChange = 45;
-                if (distance(-45,targetLat,longit,lat) > Math.PI/2) // north
-                {
-                    lat += poleLatChange;
-                    i = -1;
-                    xCenter = 3.5*sideLength;
-                    yCenter = 0.5*sideLength;
-                    longCenter = 90.0;
-                    latCenter = 0.0;
-                }
-                else if (distance(45,targetLat,longit,lat) > Math.PI/2) // south
-                {
-                    lat += poleLatChange;
-                    i = -2;
-                    xCenter = 3.5*sideLength;
-                    yCenter = 2.5*sideLength;
-                    longCenter = -90.0;
-                    latCenter = 0.0;
-                }
-                else
-                {
-                    i = ((int) Math.floor(normalLat/90))%4;
-                    longCenter = 0.0;
-                    latCenter = 90*i + 45;
-                    xCenter = (i+0.5)*sideLength;
-                    yCenter = 1.5*sideLength;
-                }
-                double cosC = Math.sin(longCenter*(Math.PI/180))*Math.sin(longit*(Math.PI/180))
-                            + Math.cos(longCenter*(Math.PI/180))*Math.cos(longit*(Math.PI/180))*Math.cos((lat-latCenter)*(Math.PI/180));
-                //System.out.println(Math.cos(lat*(Math.PI/180))*Math.sin((longit-longCenter)*(Math.PI/180))+","+cosC+","+i);
-                //if (i != -1) return 0;
-                return xCenter + sideLength/2*Math.cos(longit*(Math.PI/180))*Math.sin((lat-latCenter)*(Math.PI/180))/cosC;
-            case 5:
-                double phi;
-                if (longit < 0) phi = -longit;
-                else phi = longit;
-                phi += 90;
-                phi *= (Math.PI/180);
-                double theta = lat * (Math.PI/180);
-                double scale5 = Math.min((height-1)/2.0, (width-1)/4.0);
-                double r = scale5 * (1/Math.tan(phi/2.0));
-                if (longit > 0)
-                {
-                    return (int) (-1*r*Math.cos(theta) + (width-1)/2 +-1*scale5);
-                }
-                else
-                {
-                    return (int) (r*Math.cos(theta) + (width-1)/2 + scale5);
-                }
-            case 4:
-                longit *= (Math.PI/180);
-                lat *= (Math.PI/180);
-                double scale4 = ((width-2)/2.0)*Math.sqrt(3)/(Math.PI*1.5);
-                return scale4*1.5*lat*Math.sqrt((Math.PI*Math.PI)/3 - longit*longit)/Math.PI+width/2.0;
-
-            case 3:
-                longit *= (Math.PI/180);
-                lat *= (Math.PI/180);
-                double scale3 = ((width-2)/2.0)/(2*Math.PI);
-                return scale3*lat*Math.sqrt((4 - 3*Math.sin(Math.abs(longit)))) + width/2.0;
-
-            case 2:
-                longit *= (Math.PI/180);
-                lat *= (Math.PI/180);
-                double sinPhiPrime = Math.tan(longit/2);
-                double cosPhiPrime = Math.sqrt(1-sinPhiPrime*sinPhiPrime);//Math.cos(Math.asin(sinPhiPrime));
-                return ((height-1)/2.0)*cosPhiPrime*Math.sin(lat/2)/(1
-                            + cosPhiPrime*Math.cos(lat/2)) + (width/2);
-
-            case 1:
-                return ((lat/360.0)*(width-1)) + (width-1)/2.0;
-
-            case 0:
-                return (lat/360.0)*(width-1) + (width-1)/2.0;
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
 
-            default:
-                throw new IllegalArgumentException("Invalid Map Type");
+    // draw the point (3x3 pixels) at position x, y in the pixels of an image
+    // of the given width and make the point have the rgb color given by color.
+    // Only rows from top up to (but not including) bottom are drawn, so that
+    // separate bands of the image can be drawn at the same time.
+    static void draw3by3Point(int x, int y, int color, int[] pixels, int width, int top, int bottom)
+    {
+        int firstRow = Math.max(y-1, top);
+        int lastRow = Math.min(y+1, bottom-1);
+        int firstColumn = Math.max(x-1, 0);
+        int lastColumn = Math.min(x+1, width-1);
+        for (int row = firstRow; row <= lastRow; row++)
+        {
+            int offset = row*width;
+            for (int column = firstColumn; column <= lastColumn; column++)
+            {
+                pixels[offset + column] = color;
+            }
         }
     }
 
-    // calculates the desired y position of the point at longitude longit and
-    // latitude lat on a map of size width by height, given that the map
-    // projection is of type type
-    private static double getY(double longit, double lat, int width, int height, int type)
+    // print the details of a point that was projected outside of the image
+    static void checkPosition(int x, int y, double longit, double lat, int width, int height)
     {
-
-        switch (type)
+        ///* Error Checking
+        if( x >= width)
         {
-            case 6:
-                int latOffset = 225;
-                lat += latOffset;
-                int sideLength = Math.min(((width-1)/4),((height-1)/3));
-                double xCenter = 0.0;
-                double yCenter = 0.0;
-                double longCenter;
-                double latCenter;
-                double normalLat = lat;
-                while (normalLat < 0)
-                {
-                    normalLat += 360;
-                }
-                double targetLat = (normalLat)-(normalLat%90) + 45;
-                int i;
-                //-135 puts it above the second square
-                // 45 above the 4th square
-                double poleLatChange = 45;
-                if (distance(-45,targetLat,longit,lat) > Math.PI/2) // north
-                {
-                    lat += poleLatChange;
-                    i = -1;
-                    xCenter = 3.5*sideLength;
-                    yCenter = 0.5*sideLength;
-                    longCenter = 90.0;
-                    latCenter = 0.0;
-                }
-                else if (distance(45,targetLat,longit,lat) > Math.PI/2) // south
-                {
-                    lat += poleLatChange;
-                    i = -2;
-                    xCenter = 3.5*sideLength;
-                    yCenter = 2.5*sideLength;
-                    longCenter = -90.0;
-                    latCenter = 0.0;
-                }
-                else
-                {
-                    i = ((int) Math.floor(normalLat/90))%4;
-                    longCenter = 0.0;
-                    latCenter = 90*i + 45;
-                    xCenter = (i+0.5)*sideLength;
-                    yCenter = 1.5*sideLength;
-                }
-                double cosC = Math.sin(longCenter*(Math.PI/180))*Math.sin(longit*(Math.PI/180))
-                              + Math.cos(longCenter*(Math.PI/180))*Math.cos(longit*(Math.PI/180))*Math.cos((lat-latCenter)*(Math.PI/180));
-                //if (i != -1) return 0;
-                return yCenter - sideLength/(2)*(Math.cos(longCenter*(Math.PI/180))*Math.sin(longit*(Math.PI/180))
-                       - Math.sin(longCenter*(Math.PI/180))*Math.cos(longit*(Math.PI/180))*Math.cos((lat-latCenter)*(Math.PI/180)))/cosC;
-            case 5:
-                double phi;
-                if (longit < 0) phi = -longit;
-                else phi = longit;
-                phi += 90;
-                phi *= (Math.PI/180);
-                double theta = lat * (Math.PI/180);
-                double scale5 = Math.min((height-1)/2.0, (width-1)/4.0);
-                double r = scale5 * (1/Math.tan(phi/2.0));
-                return (int) (r*Math.sin(theta) + (height-1)/2);
-            case 4:
-                longit *= (Math.PI/180);
-                double scale4 = ((width-2)/2.0)*Math.sqrt(3)/(Math.PI*1.5);
-                return -1*scale4*longit+height/2.0;
-
-            case 3:
-                if(longit == 0)
-                {
-                    return height/2.0;
-                }
-                longit *= (Math.PI/180);
-                lat *= (Math.PI/180);
-                double scale3 = ((width-1)/2.0)/2;
-                double y3 = (2 - Math.sqrt(4 - 3*Math.sin(Math.abs(longit))))*(longit/Math.abs(longit));
-                return -1*scale3 * y3 + height/2.0;
-
-            case 2:
-                longit *= (Math.PI/180);
-                lat *= (Math.PI/180);
-                double sinPhiPrime = Math.tan(longit/2);
-                double cosPhiPrime = Math.sqrt(1-sinPhiPrime*sinPhiPrime);//Math.cos(Math.asin(sinPhiPrime));
-                return -1*((height/2.0-1))*sinPhiPrime/(1 + cosPhiPrime*Math.cos(lat/2)) + (height/2);
-
-            case 1:
-                longit *= (Math.PI/180);
-                double y1 = Math.log(Math.tan(0.25*Math.PI + 0.5*longit));
-                y1 *= -1*height/4.0;
-                y1 += height/2.0;
-                y1 = Math.max(Math.min(y1,height-1),0);
-                return y1;
-
-            case 0:
-                return -1*(longit/180)*(height-1) + (height-1)/2.0;
-
-            default:
-                throw new IllegalArgumentException("Invalid Map Type");
+            System.out.println("x:"+x+";y:"+y+";longit:"+longit+";lat:"+lat);
+        }
+        if( y >= height)
+        {
+            System.out.println("x:"+x+";y:"+(y)+";longit:"+longit+";lat:"+lat);
         }
+        if(x < 0)
+        {
+            System.out.println("x:"+x+";y:"+y+";longit:"+longit+";lat:"+lat);
+        }
+        if( y < 0)
+        {
+            System.out.println("x:"+x+";y:"+y+";longit:"+longit+";lat:"+lat);
+        }
+        //*/
     }
 
-    // draw the point (3x3 pixels) at position x, y in BufferedImage image
-    // and make the point have the rgb color given by color.
-    // draw a square with sides of len
-    private static void draw3by3Point(int x, int y, int color, BufferedImage image)
+    // project the point at longitude longit and latitude lat and draw it
+    // onto the pixels of the image with the given color. xy is scratch space
+    // for the projected position.
+    private static void drawPoint(double longit, double lat, int color, int[] pixels,
+                                  int width, int height, Projection projection, double[] xy)
     {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        image.setRGB(x, y, color);
+        projection.project(longit, lat, xy);
+        int x = (int)Math.round(xy[0]);
+        int y = (int)Math.round(xy[1]);
 
-        if(y > 0)
+        checkPosition(x, y, longit, lat, width, height);
+        if (x < 0 || x >= width || y < 0 || y >= height)
         {
-            image.setRGB(x, y-1, color);
-        }
-        if(y < height-1)
-        {
-            image.setRGB(x, y+1, color);
+            throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
         }
 
-        if(x > 0)
+        draw3by3Point(x, y, color, pixels, width, 0, height);
+    }
+
+    // the number of values on the first line of a text point file that is
+    // not blank: 3 for points and 5 for spans
+    private static int valuesPerLine(File file) throws IOException
+    {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file)))
         {
-            if(y > 0)
+            String line = reader.readLine();
+            while (line != null && line.trim().isEmpty())
             {
-                image.setRGB(x-1, y-1, color);
+                line = reader.readLine();
             }
-            image.setRGB(x-1, y, color);
-            if(y < height-1)
+            if (line == null)
             {
-                image.setRGB(x-1, y+1, color);
+                return 0;
             }
+            return line.trim().split("\\s+").length;
         }
-        if(x < width-1)
+    }
+
+    // fill in every pixel in rows top up to (but not including) bottom that
+    // is part of the map with the color of the matching point on the
+    // equal-area source image. Fully transparent source pixels (such as the
+    // top row of earthStandard.png) leave the base image showing.
+    static void reproject(EqualAreaImage source, int[] pixels, int width, Projection projection,
+                          int top, int bottom)
+    {
+        double[] longLat = new double[2];
+        for (int y = top; y < bottom; y++)
         {
-            if(y > 0)
+            int offset = y*width;
+            for (int x = 0; x < width; x++)
             {
-                image.setRGB(x+1, y-1, color);
-            }
-            image.setRGB(x+1, y, color);
-            if(y < height-1)
-            {
-                image.setRGB(x+1, y+1, color);
+                if (projection.unproject(x, y, longLat))
+                {
+                    int color = source.getRGB(longLat[0], longLat[1]);
+                    if ((color >>> 24) != 0)
+                    {
+                        pixels[offset + x] = color;
+                    }
+                }
             }
         }
     }
@@ -315,7 +211,34 @@ public class createMap
         String sourceImageFilename = "baseImages/" + args[0];
         String outputFileName = "outputImages/" + args[2] + ".png";
         int myType = Integer.parseInt(args[1]);
-        int numFiles = Integer.parseInt(args[3]);
+        int argIndex = 3;
+        String reprojectFilename = null;
+        int reprojectOrientation = 0;
+        boolean parallel = false;
+        while (argIndex < args.length && args[argIndex].startsWith("-"))
+        {
+            if (args[argIndex].equals("-reproject"))
+            {
+                reprojectFilename = args[argIndex+1];
+                reprojectOrientation = Integer.parseInt(args[argIndex+2]);
+                argIndex += 3;
+            }
+            else if (args[argIndex].equals("-parallel"))
+            {
+                parallel = true;
+                argIndex++;
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown option " + args[argIndex]);
+            }
+        }
+        int numFiles = 0;
+        if (argIndex < args.length)
+        {
+            numFiles = Integer.parseInt(args[argIndex]);
+        }
+        int firstFileIndex = argIndex + 1;
 
         // load source file
         BufferedImage img = null;
@@ -328,56 +251,119 @@ public class createMap
         {
             throw new IllegalArgumentException("Invalid Image File");
         }
+        img = toIntImage(img);
+        int[] pixels = getPixels(img);
+        int width = img.getWidth();
+        int height = img.getHeight();
+
+        Projection projection = Projection.forType(myType, width, height);
+        ParallelRenderer renderer = null;
+        if (parallel)
+        {
+            renderer = new ParallelRenderer(pixels, width, height, projection);
+        }
+
+        // fill in the map from the equal-area image, if there is one
+        if (reprojectFilename != null)
+        {
+            EqualAreaImage source;
+            try
+            {
+                source = new EqualAreaImage(ImageIO.read(new File(reprojectFilename)),
+                                            reprojectOrientation);
+            } catch (IOException e)
+            {
+                throw new IllegalArgumentException("Invalid Image File " + reprojectFilename);
+            }
+            if (renderer != null)
+            {
+                renderer.reproject(source);
+            }
+            else
+            {
+                reproject(source, pixels, width, projection, 0, height);
+            }
+        }
 
         // draw datapoints onto the image
         Scanner myScanner;
-        int width = img.getWidth();
-        int height = img.getHeight();
+        double[] xy = new double[2];
+        SpanDrawer spanDrawer = new SpanDrawer(pixels, width, height, projection, renderer);
 
-        int count = 0;
         for(int i = 0; i < numFiles; i++)
         {
-            String myFileName = "pointData/" + args[i+4];
+            String myFileName = "pointData/" + args[firstFileIndex+i];
             File myFile = new File(myFileName);
+
+            // binary point files are memory-mapped rather than parsed
+            if (PointFile.isPointFile(myFile))
+            {
+                try {
+                    PointFile points = PointFile.open(myFile);
+                    int size = points.size();
+                    for (int p = 0; p < size; p++)
+                    {
+                        if (renderer != null)
+                        {
+                            renderer.add(points.getLongit(p), points.getLat(p), points.getColor(p));
+                        }
+                        else
+                        {
+                            drawPoint(points.getLongit(p), points.getLat(p), points.getColor(p),
+                                      pixels, width, height, projection, xy);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("File " + myFileName
+                                                       + " is invalid");
+                }
+                continue;
+            }
+
             try {
                 myScanner = new Scanner(myFile);
+                if (valuesPerLine(myFile) == 5)
+                {
+                    while(myScanner.hasNextDouble())
+                    {
+                        double startLongit = myScanner.nextDouble();
+                        double startLat = myScanner.nextDouble();
+                        double endLongit = myScanner.nextDouble();
+                        double endLat = myScanner.nextDouble();
+                        int color = myScanner.nextInt();
+                        spanDrawer.draw(startLongit, startLat, endLongit, endLat, color);
+                    }
+                }
                 while(myScanner.hasNextDouble())
                 {
                     double longit = myScanner.nextDouble();
                     double lat = myScanner.nextDouble();
                     int color = myScanner.nextInt();
-                    int x = (int)Math.round(getX(longit,lat,width,height, myType));
-                    int y = (int)Math.round(getY(longit,lat,width,height, myType));
-
-                    ///* Error Checking
-                    if( x >= width)
-                    {
-                        System.out.println("x:"+x+";y:"+y+";longit:"+longit+";lat:"+lat);
-                    }
-                    if( y >= height)
+                    if (renderer != null)
                     {
-                        System.out.println("x:"+x+";y:"+(y)+";longit:"+longit+";lat:"+lat);
+                        renderer.add(longit, lat, color);
                     }
-                    if(x < 0)
+                    else
                     {
-                        System.out.println("x:"+x+";y:"+y+";longit:"+longit+";lat:"+lat);
+                        drawPoint(longit, lat, color, pixels, width, height, projection, xy);
                     }
-                    if( y < 0)
-                    {
-                        System.out.println("x:"+x+";y:"+y+";longit:"+longit+";lat:"+lat);
-                    }
-                    //*/
-
-                    draw3by3Point(x, y, color, img);
-
                 }
                 myScanner.close();
-            } catch (FileNotFoundException e) {
+            } catch (IOException | NoSuchElementException e) {
+                // a line with missing or misplaced values, such as a span
+                // line in a file of points
                 throw new IllegalArgumentException("File " + myFileName
                                                    + " is invalid");
             }
         }
 
+        // the parallel renderer collects every point first and draws them
+        // all at once
+        if (renderer != null)
+        {
+            renderer.draw();
+        }
+
         // Write the image to the specified output
         try
         {
@@ -388,4 +374,110 @@ public class createMap
             System.err.println(e);
         }
     }
+
+    // draws the spans of a span file, each as points along the great circle
+    // arc between its ends, either straight onto the pixels of the image or
+    // through the parallel renderer if there is one
+    private static final class SpanDrawer
+    {
+        // the furthest apart, in pixels, that neighbouring points of a span
+        // are drawn, so that their 3x3 squares leave no gaps
+        private static final double STEP = 2.0;
+        // an arc is halved at most this many times, so an arc whose ends
+        // stay far apart on the map (across an edge of the map) is still
+        // finished
+        private static final int MAX_DEPTH = 16;
+
+        private final int[] pixels;
+        private final int width;
+        private final int height;
+        private final Projection projection;
+        private final ParallelRenderer renderer;
+        private final double[] xy = new double[2];
+        private int color;
+
+        SpanDrawer(int[] pixels, int width, int height, Projection projection,
+                   ParallelRenderer renderer)
+        {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.projection = projection;
+            this.renderer = renderer;
+        }
+
+        void draw(double startLongit, double startLat, double endLongit, double endLat, int color)
+        {
+            this.color = color;
+            projection.project(startLongit, startLat, xy);
+            double startX = xy[0];
+            double startY = xy[1];
+            drawPoint(startLongit, startLat, startX, startY);
+            if (startLongit == endLongit && startLat == endLat)
+            {
+                return;
+            }
+            projection.project(endLongit, endLat, xy);
+            double endX = xy[0];
+            double endY = xy[1];
+
+            double startCos = Math.cos(Math.toRadians(startLongit));
+            double endCos = Math.cos(Math.toRadians(endLongit));
+            split(startCos*Math.cos(Math.toRadians(startLat)), startCos*Math.sin(Math.toRadians(startLat)),
+                  Math.sin(Math.toRadians(startLongit)), startX, startY,
+                  endCos*Math.cos(Math.toRadians(endLat)), endCos*Math.sin(Math.toRadians(endLat)),
+                  Math.sin(Math.toRadians(endLongit)), endX, endY, 0);
+            drawPoint(endLongit, endLat, endX, endY);
+        }
+
+        // draw the points strictly between a and b (unit vectors, at aX, aY
+        // and bX, bY on the map), halving the arc between them until they
+        // are close enough
+        private void split(double ax, double ay, double az, double aX, double aY,
+                           double bx, double by, double bz, double bX, double bY, int depth)
+        {
+            if (depth >= MAX_DEPTH || Math.hypot(bX - aX, bY - aY) <= STEP)
+            {
+                return;
+            }
+            double mx = ax + bx;
+            double my = ay + by;
+            double mz = az + bz;
+            double length = Math.sqrt(mx*mx + my*my + mz*mz);
+            if (length < 1e-12)
+            {
+                return;
+            }
+            mx /= length;
+            my /= length;
+            mz /= length;
+            double longit = Math.toDegrees(Math.asin(Math.max(-1, Math.min(1, mz))));
+            double lat = Math.toDegrees(Math.atan2(my, mx));
+            projection.project(longit, lat, xy);
+            double mX = xy[0];
+            double mY = xy[1];
+
+            split(ax, ay, az, aX, aY, mx, my, mz, mX, mY, depth + 1);
+            drawPoint(longit, lat, mX, mY);
+            split(mx, my, mz, mX, mY, bx, by, bz, bX, bY, depth + 1);
+        }
+
+        // draw one point of a span, already projected to x, y
+        private void drawPoint(double longit, double lat, double x, double y)
+        {
+            if (renderer != null)
+            {
+                renderer.add(longit, lat, color);
+                return;
+            }
+            int px = (int)Math.round(x);
+            int py = (int)Math.round(y);
+            checkPosition(px, py, longit, lat, width, height);
+            if (px < 0 || px >= width || py < 0 || py >= height)
+            {
+                throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds!");
+            }
+            draw3by3Point(px, py, color, pixels, width, 0, height);
+        }
+    }
 }
@@ -5,14 +5,19 @@
 *
 * generateParallels
 * Compilation: javac generateParallels.java
-* Execution: java generateParallels [color]
+* Execution: java generateParallels [color] [-precision Digits] [-points PointFile]
 * Example: java generateParallels > pointData/parallels.txt
 * Example: java generateParallels "#FF0000" > pointData/parallelsRed.txt
+* Example: java generateParallels -points pointData/parallels.pts
 *
 * Prints a list of points needed to properly draw Earth's parallels. Should be
 * outputted into a file, otherwise it will just print the data to the console.
 * Optionally one can include a command line consisting of a single a color in
 * the "#FF3A19" format to set the color of the parallels.
+*
+* As in readEqualAreaMapData, -precision prints the points with Digits digits
+* after the decimal point, and -points writes them to a binary point file
+* instead of printing them.
 */
 
 
@@ -24,13 +29,33 @@ import java.io.IOException;
 public class generateParallels
 {
 
-    public static void main(String[] args)
+    public static void main(String[] args) throws IOException
     {
         // by default, the parallels are black
         String colorHexString = "#000000";
         // if there is a color argument, overwrite the default
-        if (args.length > 0) {
+        int argIndex = 0;
+        if (args.length > 0 && !args[0].startsWith("-")) {
           colorHexString = args[0];
+          argIndex++;
+        }
+
+        int precision = -1;
+        File pointsFile = null;
+        for (int a = argIndex; a < args.length; a += 2)
+        {
+            if (args[a].equals("-precision"))
+            {
+                precision = Integer.parseInt(args[a+1]);
+            }
+            else if (args[a].equals("-points"))
+            {
+                pointsFile = new File(args[a+1]);
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown option " + args[a]);
+            }
         }
 
 
@@ -55,12 +80,13 @@ public class generateParallels
         // long colorBlack = Long.parseLong("-16777216");
 
         // draw all the latitude lines
+        PointSink points = PointSink.open(pointsFile, precision);
         for(int i = -(totalLat/(degreeAppearance*2)); i <= (totalLat/(degreeAppearance*2)); i++)
         {
             for(int j = 1; j < pixelHeight/pixelGap; j++)
             {
                 double longit = 1.0*j*totalLong/(pixelHeight/pixelGap) - totalLong/2.0;
-                System.out.println(longit + " " + (double)(i*degreeAppearance) + " " + myColor);
+                points.write(longit, (double)(i*degreeAppearance), (int) myColor);
             }
         }
 
@@ -70,9 +96,14 @@ public class generateParallels
             for(int j = 0; j < pixelWidth/pixelGap; j++)
             {
                 double lat = 1.0*j*totalLat/(pixelWidth/pixelGap) - totalLat/2.0;
-                System.out.println((double)(i*degreeAppearance) + " " + lat + " " + myColor);
+                points.write((double)(i*degreeAppearance), lat, (int) myColor);
             }
         }
+        points.close();
+        if (pointsFile != null)
+        {
+            System.err.println("Wrote " + points.size() + " points to " + pointsFile);
+        }
 
     }
 }
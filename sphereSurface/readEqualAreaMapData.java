@@ -5,98 +5,152 @@
 *
 * readEqualAreaMapData
 * Compilation: javac readEqualAreaMapData.java
-* Execution: java readEqualAreaMapData inputFileName standardOrOblique
+* Execution: java readEqualAreaMapData inputFileName standardOrOblique [-precision Digits] [-points PointFile | -spans Tolerance] [-decimate MapWidth MapHeight]
 * Example: java readEqualAreaMapData equalAreaCylinders/earthStandard.png 0 > pointData/earthInColor.txt
 * Example: java readEqualAreaMapData equalAreaCylinders/marbleOblique.png 1 > pointData/marbleDataOblique.txt
+* Example: java readEqualAreaMapData equalAreaCylinders/earthStandard.png 0 -precision 4 > pointData/earthInColor.txt
+* Example: java readEqualAreaMapData equalAreaCylinders/earthStandard.png 0 -points pointData/earthInColor.pts
+* Example: java readEqualAreaMapData equalAreaCylinders/earthStandard.png 0 -spans 0 > pointData/earthSpans.txt
+* Example: java readEqualAreaMapData equalAreaCylinders/earthStandard.png 0 -decimate 1000 500 > pointData/earthSmall.txt
 *
 * Given an Lambert equal-area cylindrical map, extract all the pixels as points
 * on the sphere and store them.
 *
+* The points are printed in full precision, or with Digits digits after the
+* decimal point with -precision, which is quicker and makes a smaller file.
+* With -points they are written to a binary point file (see PointFile)
+* instead of being printed.
+*
+* With -spans, each run of pixels of the same color down a column is printed
+* as a single span line, "startLongit startLat endLongit endLat color", with
+* the points of its first and last pixels. The pixels of a column all lie on
+* one great circle, so createMap draws a span by covering the arc between its
+* ends, and large areas of one color (such as the oceans) take a few lines
+* rather than one per pixel. With a Tolerance of 0 a span is a run of pixels
+* of exactly the same color, and the map is drawn exactly as from the points.
+* A larger Tolerance is lossy: a pixel whose red, green and blue each differ by
+* at most Tolerance from the mean color of the pixels of the span so far joins
+* the span, and the span is drawn in the mean color of all its pixels. This
+* makes fewer, longer spans from photographs, which rarely have long runs of
+* exactly the same color, at the cost of blurring colors down each column.
+*
+* With -decimate, the points are made for a map of MapWidth by MapHeight
+* pixels rather than for every pixel. Every pixel of an equal-area map covers
+* the same area of the sphere, and so does every square block of k by k
+* pixels, so the image is cut into such blocks, and each block becomes a
+* single point at its center, in the average color of its pixels. k is the
+* square root of the number of pixels in the image divided by the number in
+* the map, rounded to the nearest whole number, which gives about one block
+* for each pixel of the map (k is 2 for earthStandard.png and a 1000 by 500
+* map). A large image then makes a point file no bigger than the map needs,
+* which is quicker to draw and looks smoother than drawing every pixel over
+* the last. The blocks are extracted just as the pixels would be, so -decimate
+* works with -spans too. An image that is not much bigger than the map (k of
+* 1) is extracted as it is. The blocks are spread evenly over the sphere, so a
+* map that enlarges some areas (such as Mercator near the poles) may show gaps
+* there unless it is given a larger size.
+*
+* The image is extracted on every processor at once, in stripes of columns,
+* and the points are always written in the same order (column by column, top
+* to bottom), so the output does not depend on the number of processors.
+*
 */
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class readEqualAreaMapData
 {
+    // about how many points each stripe of columns holds
+    private static final int STRIPE_POINTS = 1 << 17;
 
-    // converts from pixel location to longitude
+    // the position of column x across the image, from -1 to 1 (x may be
+    // between columns, for the center of a block)
     // type = 0 for equator
-    // 1 for meridian
-    private static double getLong(int x, int y, int w, int h, int type)
+    // 1 for meridian, where it is moved along by half a turn
+    private static double getScaledX(double x, int w, int type)
     {
-        if (type == 0)
-        {
-            double newY = (y+0.5) - (h/2.0);
-            double scaledY = newY/((h-1)/2.0);
-            double phi = Math.asin(scaledY)*180/Math.PI;
-            return -phi;
-        }
-        else if (type == 1)
+        double newX = (x+0.5) - (w/2.0);
+        double scaledX = newX/((w-1)/2.0);
+        if (type == 1)
         {
-            double newX = (x+0.5) - (w/2.0);
-            double scaledX = newX/((w-1)/2.0);
             scaledX += 0.5;
             if (scaledX > 1)
             {
                 scaledX = scaledX - 2;
             }
-            double newY = (y+0.5) - (h/2.0);
-            double scaledY = newY/((h-1)/2.0);
-            double phi = -1*Math.asin(Math.sqrt(1-(scaledY*scaledY))*Math.sin(scaledX*Math.PI))*180/Math.PI;
-            return -phi;
         }
-        return 0;
+        return scaledX;
     }
 
-    // converts from pixel location to latitude
-    // type = 0 for equator
-    // 1 for meridian
-    private static double getLat(int x, int y, int w, int h, int type)
+    // the position of row y down the image, from -1 to 1
+    private static double getScaledY(double y, int h)
+    {
+        double newY = (y+0.5) - (h/2.0);
+        return newY/((h-1)/2.0);
+    }
+
+    // converts from pixel location to longitude for the equator, where it
+    // only depends on the row
+    private static double getStandardLong(double scaledY)
+    {
+        double phi = Math.asin(scaledY)*180/Math.PI;
+        return -phi;
+    }
+
+    // converts from pixel location to latitude for the equator, where it
+    // only depends on the column
+    private static double getStandardLat(double scaledX)
+    {
+        double lambda = -1*scaledX*180;
+        return -lambda;
+    }
+
+    // converts from pixel location to longitude for the meridian, given
+    // sqrt(1-scaledY^2) for the row and sin(scaledX*pi) for the column
+    private static double getObliqueLong(double rowRoot, double columnSin)
+    {
+        double phi = -1*Math.asin(rowRoot*columnSin)*180/Math.PI;
+        return -phi;
+    }
+
+    // converts from pixel location to latitude for the meridian, given
+    // sqrt(1-scaledY^2) for the row and cos(scaledX*pi) for the column
+    private static double getObliqueLat(double scaledX, double scaledY, double rowRoot,
+                                        double columnCos)
     {
-        if (type == 0)
+        double numerator = -1 * scaledY;
+        double denominator = rowRoot*columnCos;
+        double lambda = -1*Math.atan(numerator/denominator)*180/Math.PI;
+        if (scaledX < -0.5)
         {
-            double newX = (x+0.5) - (w/2.0);
-            double scaledX = newX/((w-1)/2.0);
-            double lambda = -1*scaledX*180;
-            return -lambda;
+            lambda = -180 + -1*lambda;
         }
-        else if (type == 1)
+        else if(scaledX > 0.5)
         {
-            double newX = (x+0.5) - (w/2.0);
-            double scaledX = newX/((w-1)/2.0);
-            scaledX += 0.5;
-            if (scaledX > 1)
-            {
-                scaledX = scaledX - 2;
-            }
-            double newY = (y+0.5) - (h/2.0);
-            double scaledY = newY/((h-1)/2.0);
-            double numerator = -1 * scaledY;
-            double denominator = Math.sqrt(1-(scaledY*scaledY))*Math.cos(scaledX*Math.PI);
-            double lambda = -1*Math.atan(numerator/denominator)*180/Math.PI;
-            if (scaledX < -0.5)
-            {
-                lambda = -180 + -1*lambda;
-            }
-            else if(scaledX > 0.5)
-            {
-                lambda = 180 - lambda;
-            }
-            else
-            {
-                lambda *= -1;
-            }
-            lambda += 180;
-            if (lambda >= 180)
-            {
-                lambda -= 360;
-            }
-            return -lambda;
+            lambda = 180 - lambda;
         }
-        return 0;
+        else
+        {
+            lambda *= -1;
+        }
+        lambda += 180;
+        if (lambda >= 180)
+        {
+            lambda -= 360;
+        }
+        return -lambda;
     }
 
     // convert the result of getRGB to a hex color
@@ -106,7 +160,7 @@ public class readEqualAreaMapData
         return fullRGBA.substring(2,8);
     }
 
-    public static void main(String[] args)
+    public static void main(String[] args) throws IOException
     {
         BufferedImage img = null;
         try {
@@ -122,21 +176,445 @@ public class readEqualAreaMapData
         // grab the orientation, either along the equator (standard) or
         // meridian (oblique)
         int orientation = Integer.parseInt(args[1]);
+        if (orientation != 0 && orientation != 1)
+        {
+            throw new IllegalArgumentException("Invalid orientation " + orientation);
+        }
+
+        int precision = -1;
+        File pointsFile = null;
+        boolean spans = false;
+        int tolerance = 0;
+        int mapWidth = 0;
+        int mapHeight = 0;
+        int a = 2;
+        while (a < args.length)
+        {
+            if (args[a].equals("-precision"))
+            {
+                precision = Integer.parseInt(args[a+1]);
+                a += 2;
+            }
+            else if (args[a].equals("-points"))
+            {
+                pointsFile = new File(args[a+1]);
+                a += 2;
+            }
+            else if (args[a].equals("-spans"))
+            {
+                spans = true;
+                tolerance = Integer.parseInt(args[a+1]);
+                a += 2;
+            }
+            else if (args[a].equals("-decimate"))
+            {
+                mapWidth = Integer.parseInt(args[a+1]);
+                mapHeight = Integer.parseInt(args[a+2]);
+                if (mapWidth <= 0 || mapHeight <= 0)
+                {
+                    throw new IllegalArgumentException("Invalid map size " + mapWidth + " by " + mapHeight);
+                }
+                a += 3;
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown option " + args[a]);
+            }
+        }
+        if (spans && pointsFile != null)
+        {
+            throw new IllegalArgumentException("Spans can only be printed as text");
+        }
+
+        // the side of the blocks of pixels that become one point each, so
+        // that there are about as many blocks as pixels in the map
+        int block = 1;
+        if (mapWidth > 0)
+        {
+            block = (int) Math.max(1, Math.round(Math.sqrt((double) width*height/((double) mapWidth*mapHeight))));
+        }
+
+        // extract the pixel data, a stripe of columns of blocks at a time
+        // (a block is a single pixel unless the image is decimated). The stripes
+        // of each batch are read and formatted at the same time, each into
+        // its own buffer, and then written out in order, so the points come
+        // out column by column just as if they were extracted one at a time,
+        // however many processors there are.
+        Extraction extraction = new Extraction(img, orientation, spans, tolerance, block);
+        int stripeWidth = Math.max(1, STRIPE_POINTS / extraction.rows);
+        int numStripes = (extraction.columns + stripeWidth - 1) / stripeWidth;
+        int batchSize = Math.min(numStripes, 2*ForkJoinPool.getCommonPoolParallelism());
+        Stripe[] batch = new Stripe[batchSize];
+        for (int k = 0; k < batchSize; k++)
+        {
+            batch[k] = new Stripe(stripeWidth*block*height, stripeWidth*extraction.rows, block > 1,
+                                  pointsFile == null, precision);
+        }
+        OutputStream out = null;
+        PointFile.Writer points = null;
+        if (pointsFile == null)
+        {
+            out = new FileOutputStream(FileDescriptor.out);
+        }
+        else
+        {
+            points = new PointFile.Writer(pointsFile, false);
+        }
+        for (int first = 0; first < numStripes; first += batchSize)
+        {
+            int count = Math.min(batchSize, numStripes - first);
+            for (int k = 0; k < count; k++)
+            {
+                batch[k].start = (first + k)*stripeWidth;
+                batch[k].end = Math.min(batch[k].start + stripeWidth, extraction.columns);
+            }
+            ForkJoinPool.commonPool().invoke(new StripeAction(extraction, batch, 0, count));
+            for (int k = 0; k < count; k++)
+            {
+                batch[k].writeTo(out, points);
+            }
+        }
+        if (points != null)
+        {
+            points.close();
+            System.err.println("Wrote " + points.size() + " points to " + pointsFile);
+        }
+        else
+        {
+            out.close();
+        }
+    }
+
+    // the color whose alpha, red, green and blue are the given totals over n
+    // pixels divided by n, rounded to the nearest whole number
+    private static int getMeanColor(int alpha, int red, int green, int blue, int n)
+    {
+        return ((alpha + n/2)/n << 24) | ((red + n/2)/n << 16)
+               | ((green + n/2)/n << 8) | ((blue + n/2)/n);
+    }
+
+    // the pixels of an image to extract, in square blocks of block by block
+    // pixels (the blocks at the right and bottom edges may be smaller), with
+    // everything that only depends on the column or the row of blocks worked
+    // out once, rather than for every block. For the equator these are the
+    // latitude of each column and the longitude of each row.
+    private static final class Extraction
+    {
+        private final BufferedImage img;
+        private final int orientation;
+        private final boolean spans;
+        private final int tolerance;
+        private final int block;
+        private final int width;
+        private final int height;
+        // the number of columns and rows of blocks
+        final int columns;
+        final int rows;
+        private final double[] scaledXs;
+        private final double[] columnSins;
+        private final double[] columnCoss;
+        private final double[] columnLats;
+        private final double[] scaledYs;
+        private final double[] rowRoots;
+        private final double[] rowLongs;
+
+        Extraction(BufferedImage img, int orientation, boolean spans, int tolerance, int block)
+        {
+            this.img = img;
+            this.orientation = orientation;
+            this.spans = spans;
+            this.tolerance = tolerance;
+            this.block = block;
+            width = img.getWidth();
+            height = img.getHeight();
+            columns = (width + block - 1) / block;
+            rows = (height + block - 1) / block;
+            scaledXs = new double[columns];
+            columnSins = new double[columns];
+            columnCoss = new double[columns];
+            columnLats = new double[columns];
+            for (int i = 0; i < columns; i++)
+            {
+                scaledXs[i] = getScaledX(getCenter(i, width), width, orientation);
+                columnSins[i] = Math.sin(scaledXs[i]*Math.PI);
+                columnCoss[i] = Math.cos(scaledXs[i]*Math.PI);
+                columnLats[i] = getStandardLat(scaledXs[i]);
+            }
+            scaledYs = new double[rows];
+            rowRoots = new double[rows];
+            rowLongs = new double[rows];
+            for (int j = 0; j < rows; j++)
+            {
+                scaledYs[j] = getScaledY(getCenter(j, height), height);
+                rowRoots[j] = Math.sqrt(1-(scaledYs[j]*scaledYs[j]));
+                rowLongs[j] = getStandardLong(scaledYs[j]);
+            }
+        }
+
+        // the pixel position of the center of block i along a side of size
+        // pixels, which is pixel i itself for blocks of one pixel
+        private double getCenter(int i, int size)
+        {
+            int first = i*block;
+            int last = Math.min(first + block, size) - 1;
+            return (first + last)/2.0;
+        }
+
+        // the average color of each block of the pixels read for a stripe,
+        // across blocks wide, averaging alpha, red, green and blue
+        // separately
+        private void average(int[] pixels, int pixelWidth, int across, int[] colors)
+        {
+            for (int j = 0; j < rows; j++)
+            {
+                int top = j*block;
+                int bottom = Math.min(top + block, height);
+                for (int i = 0; i < across; i++)
+                {
+                    int left = i*block;
+                    int right = Math.min(left + block, pixelWidth);
+                    int alpha = 0;
+                    int red = 0;
+                    int green = 0;
+                    int blue = 0;
+                    for (int y = top; y < bottom; y++)
+                    {
+                        for (int x = left; x < right; x++)
+                        {
+                            int rgb = pixels[y*pixelWidth + x];
+                            alpha += rgb >>> 24;
+                            red += (rgb >> 16) & 0xFF;
+                            green += (rgb >> 8) & 0xFF;
+                            blue += rgb & 0xFF;
+                        }
+                    }
+                    int n = (bottom - top)*(right - left);
+                    colors[j*across + i] = getMeanColor(alpha, red, green, blue, n);
+                }
+            }
+        }
 
+        // true if a pixel is close enough in color to the mean color of the
+        // pixels of a span so far to be part of it
+        private boolean isSameColor(int rgb, int spanColor)
+        {
+            if (rgb == spanColor)
+            {
+                return true;
+            }
+            return (rgb >>> 24) == (spanColor >>> 24)
+                   && Math.abs(((rgb >> 16) & 0xFF) - ((spanColor >> 16) & 0xFF)) <= tolerance
+                   && Math.abs(((rgb >> 8) & 0xFF) - ((spanColor >> 8) & 0xFF)) <= tolerance
+                   && Math.abs((rgb & 0xFF) - (spanColor & 0xFF)) <= tolerance;
+        }
 
-        // extract the pixel data.
-        for (int i = 0; i < width; i++)
+        // write the points (or spans) of the columns of blocks of a stripe
+        // into its buffer, column by column. The pixels are read a row of the
+        // stripe at a time, in the order the image stores them.
+        void extract(Stripe stripe) throws IOException
         {
-            for (int j = 0; j < height; j++)
+            int stripeWidth = stripe.end - stripe.start;
+            int pixelStart = stripe.start*block;
+            int pixelWidth = Math.min(stripe.end*block, width) - pixelStart;
+            int[] pixels = img.getRGB(pixelStart, 0, pixelWidth, height, stripe.pixels, 0, pixelWidth);
+            if (block > 1)
+            {
+                average(pixels, pixelWidth, stripeWidth, stripe.colors);
+                pixels = stripe.colors;
+            }
+            for (int i = stripe.start; i < stripe.end; i++)
             {
-                double longit = getLong(i, j, width, height, orientation);
+                // the first pixel of the current span, the totals of the
+                // alpha, red, green and blue of its pixels so far, and their
+                // mean color
+                double startLongit = 0;
+                double startLat = 0;
+                int spanAlpha = 0;
+                int spanRed = 0;
+                int spanGreen = 0;
+                int spanBlue = 0;
+                int spanLength = 0;
+                int spanColor = 0;
+                for (int j = 0; j < rows; j++)
+                {
+                    double longit;
+                    double lat;
+                    if (orientation == 0)
+                    {
+                        longit = rowLongs[j];
+                        lat = columnLats[i];
+                    }
+                    else
+                    {
+                        longit = getObliqueLong(rowRoots[j], columnSins[i]);
+                        lat = getObliqueLat(scaledXs[i], scaledYs[j], rowRoots[j], columnCoss[i]);
+                    }
+                    int offset = j*stripeWidth + (i - stripe.start);
+                    int rgb = pixels[offset];
 
-                double lat = getLat(i, j, width, height, orientation);
-                int rgb = img.getRGB(i,j);
+                    if (!spans)
+                    {
+                        stripe.points.write(longit, lat, rgb);
+                        continue;
+                    }
+                    if (j == 0 || !isSameColor(rgb, spanColor))
+                    {
+                        startLongit = longit;
+                        startLat = lat;
+                        spanAlpha = 0;
+                        spanRed = 0;
+                        spanGreen = 0;
+                        spanBlue = 0;
+                        spanLength = 0;
+                    }
+                    spanAlpha += rgb >>> 24;
+                    spanRed += (rgb >> 16) & 0xFF;
+                    spanGreen += (rgb >> 8) & 0xFF;
+                    spanBlue += rgb & 0xFF;
+                    spanLength++;
+                    spanColor = getMeanColor(spanAlpha, spanRed, spanGreen, spanBlue, spanLength);
+                    if (j == rows - 1 || !isSameColor(pixels[offset + stripeWidth], spanColor))
+                    {
+                        stripe.textWriter.writeSpan(startLongit, startLat, longit, lat, spanColor);
+                    }
+                }
+            }
+        }
+    }
+
+    // the columns of blocks from start up to (but not including) end of the
+    // image, and the buffer their points are written into: text lines, or the
+    // points themselves for a binary point file
+    private static final class Stripe
+    {
+        int start;
+        int end;
+        final int[] pixels;
+        // the average colors of the blocks, when they are bigger than a pixel
+        final int[] colors;
+        final ByteArrayOutputStream text;
+        final PointTextWriter textWriter;
+        final PointList list;
+        final PointSink points;
 
-                System.out.println(longit + " " + lat + " " + rgb);
+        Stripe(int maxPixels, int maxBlocks, boolean averaged, boolean isText, int precision)
+        {
+            pixels = new int[maxPixels];
+            colors = averaged ? new int[maxBlocks] : null;
+            if (isText)
+            {
+                text = new ByteArrayOutputStream(1 << 16);
+                textWriter = new PointTextWriter(Channels.newChannel(text), precision);
+                list = null;
+                points = textWriter;
+            }
+            else
+            {
+                text = null;
+                textWriter = null;
+                list = new PointList();
+                points = list;
             }
         }
 
+        // write the points of the stripe to out as text, or to the binary
+        // point file, and empty the buffer
+        void writeTo(OutputStream out, PointFile.Writer binary) throws IOException
+        {
+            if (text != null)
+            {
+                textWriter.flush();
+                text.writeTo(out);
+                text.reset();
+            }
+            else
+            {
+                list.writeTo(binary);
+            }
+        }
+    }
+
+    // points kept in memory until they are written to another sink
+    private static final class PointList implements PointSink
+    {
+        private double[] longits = new double[1 << 10];
+        private double[] lats = new double[1 << 10];
+        private int[] colors = new int[1 << 10];
+        private int size = 0;
+
+        public void write(double longit, double lat, int color)
+        {
+            if (size == longits.length)
+            {
+                int capacity = 2*size;
+                longits = Arrays.copyOf(longits, capacity);
+                lats = Arrays.copyOf(lats, capacity);
+                colors = Arrays.copyOf(colors, capacity);
+            }
+            longits[size] = longit;
+            lats[size] = lat;
+            colors[size] = color;
+            size++;
+        }
+
+        public long size()
+        {
+            return size;
+        }
+
+        public void close()
+        {
+        }
+
+        // write the points to another sink, in order, and empty the list
+        void writeTo(PointSink sink) throws IOException
+        {
+            for (int i = 0; i < size; i++)
+            {
+                sink.write(longits[i], lats[i], colors[i]);
+            }
+            size = 0;
+        }
+    }
+
+    // extracts stripes start up to (but not including) end, one task per
+    // stripe
+    private static final class StripeAction extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Extraction extraction;
+        private final Stripe[] stripes;
+        private final int start;
+        private final int end;
+
+        StripeAction(Extraction extraction, Stripe[] stripes, int start, int end)
+        {
+            this.extraction = extraction;
+            this.stripes = stripes;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute()
+        {
+            if (end - start <= 1)
+            {
+                if (end > start)
+                {
+                    try
+                    {
+                        extraction.extract(stripes[start]);
+                    } catch (IOException e)
+                    {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new StripeAction(extraction, stripes, start, middle),
+                      new StripeAction(extraction, stripes, middle, end));
+        }
     }
 }
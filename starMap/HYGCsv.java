@@ -0,0 +1,345 @@
+/*
+* HYGCsv
+* Compilation: javac HYGCsv.java
+*
+* Reads the rows of a HYG 1.1 star catalog CSV (such as rawData/hygfull.csv)
+* for readHYGData. The file is memory-mapped and each field is parsed straight
+* from its bytes into a primitive, so reading a row creates no objects. Use it
+* as a cursor: open() skips the header line, and each call to next() moves to
+* the next row, whose values are then available from the getters.
+*
+* Fields are separated by commas and surrounding spaces are ignored. As in the
+* original String-based parsing, an empty Hip or HD field reads as -1 and an
+* empty numeric field reads as NaN; this includes a ColorIndex left empty at
+* the end of a line, or any fields missing from the end of a line. The text
+* columns (HR, Gliese, BayerFlamsteed, ProperName and Spectrum) are skipped.
+*
+* Columns: StarID,Hip,HD,HR,Gliese,BayerFlamsteed,ProperName,RA,Dec,Distance,
+*          Mag,AbsMag,Spectrum,ColorIndex
+*/
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+public final class HYGCsv implements AutoCloseable
+{
+    // the file is mapped this many bytes at a time
+    private static final long WINDOW_SIZE = 1L << 26;
+    // no row may be longer than this, so a whole row always fits in a window
+    private static final int MAX_ROW_LENGTH = 1 << 16;
+    private static final int NUM_COLUMNS = 14;
+
+    // powers of ten that are exact as doubles
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static
+    {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+        {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1]*10;
+        }
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final long length;
+    private MappedByteBuffer window;
+    // offset of the window in the file
+    private long windowStart;
+    // position of the next row in the window
+    private int position;
+
+    // start and end (exclusive) in the window of each field of the current
+    // row, with surrounding spaces left out
+    private final int[] fieldStarts = new int[NUM_COLUMNS];
+    private final int[] fieldEnds = new int[NUM_COLUMNS];
+
+    private HYGCsv(File file, FileChannel channel) throws IOException
+    {
+        this.file = file;
+        this.channel = channel;
+        this.length = channel.size();
+        map(0);
+    }
+
+    // memory-map a catalog and skip its header line
+    public static HYGCsv open(File file) throws IOException
+    {
+        HYGCsv csv = new HYGCsv(file, FileChannel.open(file.toPath(), StandardOpenOption.READ));
+        csv.skipLine();
+        return csv;
+    }
+
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    // move to the next row, returning false if there are no more. Blank lines
+    // are skipped.
+    public boolean next() throws IOException
+    {
+        while (true)
+        {
+            // remap if the rest of the window might end partway through a row
+            if (window.limit() - position < MAX_ROW_LENGTH && windowStart + window.limit() < length)
+            {
+                map(windowStart + position);
+            }
+            if (position >= window.limit())
+            {
+                return false;
+            }
+            int lineStart = position;
+            int lineEnd = lineStart;
+            while (lineEnd < window.limit() && window.get(lineEnd) != '\n')
+            {
+                lineEnd++;
+            }
+            position = lineEnd + 1;
+            if (lineEnd - lineStart >= MAX_ROW_LENGTH)
+            {
+                throw new IllegalArgumentException("Line at byte " + (windowStart + lineStart)
+                                                   + " of " + file + " is too long");
+            }
+            if (lineEnd > lineStart && window.get(lineEnd - 1) == '\r')
+            {
+                lineEnd--;
+            }
+            if (isBlank(lineStart, lineEnd))
+            {
+                continue;
+            }
+            splitFields(lineStart, lineEnd);
+            return true;
+        }
+    }
+
+    // getters for the current row
+
+    public int getStarID()
+    {
+        if (fieldStarts[0] == fieldEnds[0])
+        {
+            throw new NumberFormatException("Missing StarID in " + file);
+        }
+        return parseInt(0);
+    }
+
+    public int getHip()
+    {
+        return intOrNeg1(1);
+    }
+
+    public int getHD()
+    {
+        return intOrNeg1(2);
+    }
+
+    public double getRA()
+    {
+        return doubleOrNaN(7);
+    }
+
+    public double getDec()
+    {
+        return doubleOrNaN(8);
+    }
+
+    public double getDistance()
+    {
+        return doubleOrNaN(9);
+    }
+
+    public double getMag()
+    {
+        return doubleOrNaN(10);
+    }
+
+    public double getAbsMag()
+    {
+        return doubleOrNaN(11);
+    }
+
+    public double getColorIndex()
+    {
+        return doubleOrNaN(13);
+    }
+
+    // map the window starting at the given offset of the file
+    private void map(long start) throws IOException
+    {
+        long size = Math.min(WINDOW_SIZE, length - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        position = 0;
+    }
+
+    private void skipLine() throws IOException
+    {
+        while (position < window.limit() && window.get(position) != '\n')
+        {
+            position++;
+        }
+        position++;
+    }
+
+    private boolean isBlank(int start, int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            if (window.get(i) > ' ')
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // find the fields of the line from start up to (but not including) end.
+    // Fields past the end of the line are empty.
+    private void splitFields(int start, int end)
+    {
+        int column = 0;
+        int fieldStart = start;
+        for (int i = start; i <= end && column < NUM_COLUMNS; i++)
+        {
+            if (i == end || window.get(i) == ',')
+            {
+                int s = fieldStart;
+                int e = i;
+                while (s < e && window.get(s) <= ' ')
+                {
+                    s++;
+                }
+                while (e > s && window.get(e - 1) <= ' ')
+                {
+                    e--;
+                }
+                fieldStarts[column] = s;
+                fieldEnds[column] = e;
+                column++;
+                fieldStart = i + 1;
+            }
+        }
+        for (; column < NUM_COLUMNS; column++)
+        {
+            fieldStarts[column] = end;
+            fieldEnds[column] = end;
+        }
+    }
+
+    private int intOrNeg1(int column)
+    {
+        if (fieldStarts[column] == fieldEnds[column])
+        {
+            return -1;
+        }
+        return parseInt(column);
+    }
+
+    private double doubleOrNaN(int column)
+    {
+        if (fieldStarts[column] == fieldEnds[column])
+        {
+            return Double.NaN;
+        }
+        return parseDouble(column);
+    }
+
+    private int parseInt(int column)
+    {
+        int start = fieldStarts[column];
+        int end = fieldEnds[column];
+        boolean negative = false;
+        int i = start;
+        if (window.get(i) == '-' || window.get(i) == '+')
+        {
+            negative = window.get(i) == '-';
+            i++;
+        }
+        if (i == end || end - i > 9)
+        {
+            return Integer.parseInt(fieldString(column));
+        }
+        int value = 0;
+        for (; i < end; i++)
+        {
+            int digit = window.get(i) - '0';
+            if (digit < 0 || digit > 9)
+            {
+                return Integer.parseInt(fieldString(column));
+            }
+            value = 10*value + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    // parse plain decimals ("-52.208135") directly. The digits are read into
+    // a long and divided by an exact power of ten, which rounds the same way
+    // Double.parseDouble does; anything else (exponents, too many digits) is
+    // left to Double.parseDouble.
+    private double parseDouble(int column)
+    {
+        int start = fieldStarts[column];
+        int end = fieldEnds[column];
+        boolean negative = false;
+        int i = start;
+        if (window.get(i) == '-' || window.get(i) == '+')
+        {
+            negative = window.get(i) == '-';
+            i++;
+        }
+        long digits = 0;
+        boolean anyDigits = false;
+        int numDigits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++)
+        {
+            byte b = window.get(i);
+            if (b == '.' && fractionDigits < 0)
+            {
+                fractionDigits = 0;
+                continue;
+            }
+            if (b < '0' || b > '9' || numDigits >= 15)
+            {
+                return Double.parseDouble(fieldString(column));
+            }
+            digits = 10*digits + (b - '0');
+            anyDigits = true;
+            if (digits != 0)
+            {
+                numDigits++;
+            }
+            if (fractionDigits >= 0)
+            {
+                fractionDigits++;
+            }
+        }
+        if (fractionDigits < 0)
+        {
+            fractionDigits = 0;
+        }
+        if (!anyDigits || fractionDigits >= POWERS_OF_TEN.length)
+        {
+            return Double.parseDouble(fieldString(column));
+        }
+        double value = digits / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private String fieldString(int column)
+    {
+        byte[] bytes = new byte[fieldEnds[column] - fieldStarts[column]];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = window.get(fieldStarts[column] + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
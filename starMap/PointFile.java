@@ -0,0 +1,684 @@
+/*
+* PointFile
+* Compilation: javac PointFile.java
+* Execution: java PointFile TextInputFilename BinaryOutputFilename [-byMagnitude]
+* Example: java PointFile pointData/earthInColor.txt pointData/earthInColor.pts
+* Example: java PointFile pointData/brightestHYGWithColor.txt pointData/brightestHYGWithColor.pts -byMagnitude
+*
+* A binary, columnar version of the point data text files read by createMap
+* and createMapStdDraw. The renderers check for the header below and, if it is
+* present, memory-map the columns instead of parsing text with a Scanner, so
+* reading a point costs a few array lookups and no allocation.
+*
+* Running this class converts an existing text point file. Lines with three
+* values ("longit lat color") keep the color as given; lines with six values
+* ("longit lat red green blue magnitude", the star format) have the color
+* packed as 0xRRGGBB and also store the magnitude.
+*
+* With -byMagnitude, points with a magnitude are stored brightest first
+* (points with the same magnitude stay in their original order, and points
+* with no magnitude go last), along with the original position of each
+* point and an index of where each half magnitude starts. A renderer can then
+* read only the points up to its limiting magnitude (see countUpTo) and stop,
+* rather than reading every point and dropping the faint ones, and still draw
+* them in their original order.
+*
+* File layout (all values little-endian):
+*   bytes  0-3   magic number 0x504E5453 ("PNTS")
+*   bytes  4-7   format version (1)
+*   bytes  8-11  flags; bit 0 set if there is a magnitude column, bit 1 set
+*                if the points are sorted by magnitude
+*   bytes 12-15  number of magnitude index entries m (0 unless sorted)
+*   bytes 16-23  number of points n
+*   bytes 24-27  first magnitude step s of the index (0 unless sorted)
+*   bytes 28-31  unused
+* followed by the columns, each stored contiguously:
+*   n doubles  longitude (the first value on a text line)
+*   n doubles  latitude (the second value on a text line)
+*   n ints     color, padded with 4 bytes if n is odd
+*   n doubles  magnitude (only if the flag is set)
+*   n ints     original position (only if sorted), padded like the colors
+*   m longs    magnitude index (only if sorted): entry k is the number of
+*              points with magnitude below (s + k + 1) * MAG_STEP
+*/
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+public final class PointFile
+{
+    public static final int MAGIC = 0x504E5453;
+    public static final int VERSION = 1;
+    public static final int FLAG_MAGNITUDE = 1;
+    public static final int FLAG_BY_MAGNITUDE = 2;
+    public static final int HEADER_SIZE = 32;
+    // the magnitudes covered by each entry of the magnitude index
+    public static final double MAG_STEP = 0.5;
+
+    private final int size;
+    private final boolean hasMagnitude;
+    private final DoubleBuffer longits;
+    private final DoubleBuffer lats;
+    private final IntBuffer colors;
+    private final DoubleBuffer magnitudes;
+    // null unless the points are sorted by magnitude
+    private final IntBuffer originalIndices;
+    private final LongBuffer magIndex;
+    private final int firstStep;
+
+    private PointFile(int size, boolean hasMagnitude, DoubleBuffer longits,
+                      DoubleBuffer lats, IntBuffer colors, DoubleBuffer magnitudes,
+                      IntBuffer originalIndices, LongBuffer magIndex, int firstStep)
+    {
+        this.size = size;
+        this.hasMagnitude = hasMagnitude;
+        this.longits = longits;
+        this.lats = lats;
+        this.colors = colors;
+        this.magnitudes = magnitudes;
+        this.originalIndices = originalIndices;
+        this.magIndex = magIndex;
+        this.firstStep = firstStep;
+    }
+
+    // returns true if the file starts with the binary point file header, so
+    // that the renderers can fall back to the text format otherwise
+    public static boolean isPointFile(File file)
+    {
+        if (file.length() < HEADER_SIZE)
+        {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file)))
+        {
+            return Integer.reverseBytes(in.readInt()) == MAGIC;
+        } catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    // memory-map the columns of a binary point file
+    public static PointFile open(File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining())
+            {
+                if (channel.read(header) < 0)
+                {
+                    break;
+                }
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC)
+            {
+                throw new IllegalArgumentException("File " + file + " is not a point file");
+            }
+            if (header.getInt(4) != VERSION)
+            {
+                throw new IllegalArgumentException("File " + file + " has unsupported version "
+                                                   + header.getInt(4));
+            }
+            boolean hasMagnitude = (header.getInt(8) & FLAG_MAGNITUDE) != 0;
+            boolean byMagnitude = hasMagnitude && (header.getInt(8) & FLAG_BY_MAGNITUDE) != 0;
+            long count = header.getLong(16);
+            // each column is mapped separately, so the limit is a single
+            // column of doubles fitting in one mapping
+            if (count < 0 || count > Integer.MAX_VALUE / 8)
+            {
+                throw new IllegalArgumentException("File " + file + " has invalid point count " + count);
+            }
+            int n = (int) count;
+
+            long offset = HEADER_SIZE;
+            DoubleBuffer longits = mapDoubles(channel, offset, n);
+            offset += 8L*n;
+            DoubleBuffer lats = mapDoubles(channel, offset, n);
+            offset += 8L*n;
+            IntBuffer colors = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4L*n)
+                                      .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            offset += colorColumnBytes(n);
+            DoubleBuffer magnitudes = null;
+            if (hasMagnitude)
+            {
+                magnitudes = mapDoubles(channel, offset, n);
+                offset += 8L*n;
+            }
+            IntBuffer originalIndices = null;
+            LongBuffer magIndex = null;
+            if (byMagnitude)
+            {
+                originalIndices = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4L*n)
+                                         .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                offset += colorColumnBytes(n);
+                magIndex = channel.map(FileChannel.MapMode.READ_ONLY, offset, 8L*header.getInt(12))
+                                  .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            }
+            // the mappings stay valid after the channel is closed
+            return new PointFile(n, hasMagnitude, longits, lats, colors, magnitudes,
+                                 originalIndices, magIndex, header.getInt(24));
+        }
+    }
+
+    private static DoubleBuffer mapDoubles(FileChannel channel, long offset, int n) throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, 8L*n)
+                      .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    // the color column is padded so that the magnitude column stays 8-byte aligned
+    private static long colorColumnBytes(long n)
+    {
+        return 4L*n + ((n % 2 == 0) ? 0 : 4);
+    }
+
+    // getters
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean hasMagnitude()
+    {
+        return hasMagnitude;
+    }
+
+    public double getLongit(int i)
+    {
+        return longits.get(i);
+    }
+
+    public double getLat(int i)
+    {
+        return lats.get(i);
+    }
+
+    public int getColor(int i)
+    {
+        return colors.get(i);
+    }
+
+    public double getMagnitude(int i)
+    {
+        if (!hasMagnitude)
+        {
+            throw new IllegalStateException("Point file has no magnitude column");
+        }
+        return magnitudes.get(i);
+    }
+
+    // the position point i had before the points were sorted by magnitude
+    public int getOriginalIndex(int i)
+    {
+        if (originalIndices == null)
+        {
+            throw new IllegalStateException("Point file is not sorted by magnitude");
+        }
+        return originalIndices.get(i);
+    }
+
+    // true if the points are sorted by magnitude, brightest first
+    public boolean isByMagnitude()
+    {
+        return magIndex != null;
+    }
+
+    // the number of points, from the first, with magnitude at most maxMag.
+    // Only points sorted by magnitude can be counted this way.
+    public int countUpTo(double maxMag)
+    {
+        if (magIndex == null)
+        {
+            throw new IllegalStateException("Point file is not sorted by magnitude");
+        }
+        // the index narrows the search to the points in the same step as
+        // maxMag, which are then searched for the first that is fainter
+        if (Double.isNaN(maxMag))
+        {
+            return 0;
+        }
+        int entries = magIndex.limit();
+        double step = Math.floor(maxMag/MAG_STEP) - firstStep;
+        int lo = 0;
+        int hi = size;
+        if (step < 0)
+        {
+            hi = (entries > 0) ? (int) magIndex.get(0) : size;
+        }
+        else if (step < entries)
+        {
+            lo = (step >= 1) ? (int) magIndex.get((int) step - 1) : 0;
+            hi = (int) magIndex.get((int) step);
+        }
+        else if (entries > 0)
+        {
+            lo = (int) magIndex.get(entries - 1);
+        }
+        while (lo < hi)
+        {
+            int middle = (lo + hi) >>> 1;
+            if (magnitudes.get(middle) <= maxMag)
+            {
+                lo = middle + 1;
+            }
+            else
+            {
+                hi = middle;
+            }
+        }
+        return lo;
+    }
+
+    // Writes a binary point file. Since the number of points isn't known in
+    // advance, each column is streamed to its own temporary file and the
+    // columns are joined behind the header on close().
+    public static class Writer implements AutoCloseable
+    {
+        private static final int BUFFER_SIZE = 1 << 16;
+
+        private final File target;
+        private final boolean hasMagnitude;
+        private final boolean byMagnitude;
+        private final File[] columnFiles;
+        private final FileChannel[] columns;
+        private final ByteBuffer[] buffers;
+        private long count = 0;
+
+        // the original position of each point and the magnitude index, once
+        // the points are sorted
+        private int[] order = new int[0];
+        private long[] magIndex = new long[0];
+        private int firstStep = 0;
+
+        public Writer(File target, boolean hasMagnitude) throws IOException
+        {
+            this(target, hasMagnitude, false);
+        }
+
+        // if byMagnitude is true, the points are sorted by magnitude (which
+        // they must have) on close()
+        public Writer(File target, boolean hasMagnitude, boolean byMagnitude) throws IOException
+        {
+            if (byMagnitude && !hasMagnitude)
+            {
+                throw new IllegalArgumentException("Only points with magnitudes can be sorted by magnitude");
+            }
+            this.target = target;
+            this.hasMagnitude = hasMagnitude;
+            this.byMagnitude = byMagnitude;
+            int numColumns = hasMagnitude ? 4 : 3;
+            columnFiles = new File[numColumns];
+            columns = new FileChannel[numColumns];
+            buffers = new ByteBuffer[numColumns];
+            File dir = target.getAbsoluteFile().getParentFile();
+            for (int i = 0; i < numColumns; i++)
+            {
+                columnFiles[i] = File.createTempFile(target.getName() + ".col" + i + ".", ".tmp", dir);
+                columns[i] = FileChannel.open(columnFiles[i].toPath(), StandardOpenOption.WRITE);
+                buffers[i] = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        public void write(double longit, double lat, int color) throws IOException
+        {
+            if (hasMagnitude)
+            {
+                throw new IllegalStateException("Point file needs a magnitude for every point");
+            }
+            putDouble(0, longit);
+            putDouble(1, lat);
+            putInt(2, color);
+            count++;
+        }
+
+        public void write(double longit, double lat, int color, double magnitude) throws IOException
+        {
+            if (!hasMagnitude)
+            {
+                throw new IllegalStateException("Point file has no magnitude column");
+            }
+            putDouble(0, longit);
+            putDouble(1, lat);
+            putInt(2, color);
+            putDouble(3, magnitude);
+            count++;
+        }
+
+        private void putDouble(int column, double value) throws IOException
+        {
+            if (buffers[column].remaining() < 8)
+            {
+                flush(column);
+            }
+            buffers[column].putDouble(value);
+        }
+
+        private void putInt(int column, int value) throws IOException
+        {
+            if (buffers[column].remaining() < 4)
+            {
+                flush(column);
+            }
+            buffers[column].putInt(value);
+        }
+
+        private void flush(int column) throws IOException
+        {
+            ByteBuffer buffer = buffers[column];
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                columns[column].write(buffer);
+            }
+            buffer.clear();
+        }
+
+        public long size()
+        {
+            return count;
+        }
+
+        // write the header and join the columns into the target file
+        public void close() throws IOException
+        {
+            if (count % 2 != 0)
+            {
+                putInt(2, 0);
+            }
+            for (int i = 0; i < columns.length; i++)
+            {
+                flush(i);
+                columns[i].close();
+            }
+            if (byMagnitude)
+            {
+                sortByMagnitude();
+            }
+
+            try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                header.putInt((hasMagnitude ? FLAG_MAGNITUDE : 0) | (byMagnitude ? FLAG_BY_MAGNITUDE : 0));
+                header.putInt(magIndex.length);
+                header.putLong(count);
+                header.putInt(firstStep);
+                header.putInt(0);
+                header.flip();
+                while (header.hasRemaining())
+                {
+                    out.write(header);
+                }
+                for (File columnFile : columnFiles)
+                {
+                    try (FileChannel in = FileChannel.open(columnFile.toPath(), StandardOpenOption.READ))
+                    {
+                        long position = 0;
+                        long length = in.size();
+                        while (position < length)
+                        {
+                            position += in.transferTo(position, length - position, out);
+                        }
+                    }
+                }
+                if (byMagnitude)
+                {
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                    for (int i = 0; i < order.length; i++)
+                    {
+                        if (buffer.remaining() < 4)
+                        {
+                            writeFully(out, buffer);
+                        }
+                        buffer.putInt(order[i]);
+                    }
+                    if (order.length % 2 != 0)
+                    {
+                        if (buffer.remaining() < 4)
+                        {
+                            writeFully(out, buffer);
+                        }
+                        buffer.putInt(0);
+                    }
+                    writeFully(out, buffer);
+                }
+                ByteBuffer index = ByteBuffer.allocate(8*magIndex.length).order(ByteOrder.LITTLE_ENDIAN);
+                for (long entry : magIndex)
+                {
+                    index.putLong(entry);
+                }
+                index.flip();
+                while (index.hasRemaining())
+                {
+                    out.write(index);
+                }
+            } finally
+            {
+                for (File columnFile : columnFiles)
+                {
+                    Files.deleteIfExists(columnFile.toPath());
+                }
+            }
+        }
+
+        // rewrite the column files with the points in magnitude order and
+        // work out the magnitude index
+        private void sortByMagnitude() throws IOException
+        {
+            if (count > Integer.MAX_VALUE / 8)
+            {
+                throw new IllegalStateException("Too many points to sort by magnitude");
+            }
+            int n = (int) count;
+            double[] mags = new double[n];
+            try (FileChannel in = FileChannel.open(columnFiles[3].toPath(), StandardOpenOption.READ))
+            {
+                if (n > 0)
+                {
+                    in.map(FileChannel.MapMode.READ_ONLY, 0, 8L*n).order(ByteOrder.LITTLE_ENDIAN)
+                      .asDoubleBuffer().get(mags);
+                }
+            }
+            order = new int[n];
+            for (int i = 0; i < n; i++)
+            {
+                order[i] = i;
+            }
+            mergeSort(order, new int[n], mags, 0, n);
+
+            for (int column = 0; column < columnFiles.length; column++)
+            {
+                int width = (column == 2) ? 4 : 8;
+                File sorted = File.createTempFile(target.getName() + ".col" + column + ".", ".tmp",
+                                                  target.getAbsoluteFile().getParentFile());
+                try (FileChannel in = FileChannel.open(columnFiles[column].toPath(), StandardOpenOption.READ);
+                     FileChannel out = FileChannel.open(sorted.toPath(), StandardOpenOption.WRITE))
+                {
+                    ByteBuffer values = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size())
+                                          .order(ByteOrder.LITTLE_ENDIAN);
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                    for (int i = 0; i < n; i++)
+                    {
+                        if (buffer.remaining() < width)
+                        {
+                            writeFully(out, buffer);
+                        }
+                        if (width == 4)
+                        {
+                            buffer.putInt(values.getInt(4*order[i]));
+                        }
+                        else
+                        {
+                            buffer.putLong(values.getLong(8*order[i]));
+                        }
+                    }
+                    // keep the padding of the color column
+                    if (width == 4 && n % 2 != 0)
+                    {
+                        if (buffer.remaining() < 4)
+                        {
+                            writeFully(out, buffer);
+                        }
+                        buffer.putInt(0);
+                    }
+                    writeFully(out, buffer);
+                }
+                Files.deleteIfExists(columnFiles[column].toPath());
+                columnFiles[column] = sorted;
+            }
+
+            // entry k counts the points below the end of step firstStep + k;
+            // points with no magnitude, or an infinitely faint one, come after
+            // every entry
+            int first = 0;
+            while (first < n && Double.isInfinite(mags[order[first]]))
+            {
+                first++;
+            }
+            int last = n - 1;
+            while (last >= first && (Double.isNaN(mags[order[last]]) || Double.isInfinite(mags[order[last]])))
+            {
+                last--;
+            }
+            if (last < first)
+            {
+                return;
+            }
+            firstStep = (int) Math.floor(mags[order[first]]/MAG_STEP);
+            int lastStep = (int) Math.floor(mags[order[last]]/MAG_STEP);
+            magIndex = new long[lastStep - firstStep + 1];
+            int i = 0;
+            for (int k = 0; k < magIndex.length; k++)
+            {
+                double end = (firstStep + k + 1)*MAG_STEP;
+                while (i < n && mags[order[i]] < end)
+                {
+                    i++;
+                }
+                magIndex[k] = i;
+            }
+        }
+
+        private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    // true if magnitude a comes before b, brightest first and with no
+    // magnitude (NaN) last
+    private static boolean brighter(double a, double b)
+    {
+        return a < b || (b != b && a == a);
+    }
+
+    // stable merge sort of order[lo, hi) by magnitude, using scratch as space
+    private static void mergeSort(int[] order, int[] scratch, double[] mags, int lo, int hi)
+    {
+        if (hi - lo < 32)
+        {
+            // insertion sort for small ranges
+            for (int i = lo + 1; i < hi; i++)
+            {
+                int item = order[i];
+                int j = i;
+                while (j > lo && brighter(mags[item], mags[order[j-1]]))
+                {
+                    order[j] = order[j-1];
+                    j--;
+                }
+                order[j] = item;
+            }
+            return;
+        }
+        int middle = (lo + hi) >>> 1;
+        mergeSort(order, scratch, mags, lo, middle);
+        mergeSort(order, scratch, mags, middle, hi);
+        System.arraycopy(order, lo, scratch, lo, hi - lo);
+        int left = lo;
+        int right = middle;
+        for (int k = lo; k < hi; k++)
+        {
+            // take from the left half unless the right one is strictly brighter
+            if (right >= hi || (left < middle && !brighter(mags[scratch[right]], mags[scratch[left]])))
+            {
+                order[k] = scratch[left++];
+            }
+            else
+            {
+                order[k] = scratch[right++];
+            }
+        }
+    }
+
+
+    // converts a text point file into a binary point file
+    public static void main(String[] args) throws IOException
+    {
+        File input = new File(args[0]);
+        File output = new File(args[1]);
+        boolean byMagnitude = args.length > 2 && args[2].equals("-byMagnitude");
+
+        Writer writer = null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(input)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                String[] items = line.trim().split("\\s+");
+                if (items.length < 3)
+                {
+                    continue;
+                }
+                // the first line decides whether this is the star format
+                if (writer == null)
+                {
+                    writer = new Writer(output, items.length >= 6, byMagnitude && items.length >= 6);
+                }
+                double longit = Double.parseDouble(items[0]);
+                double lat = Double.parseDouble(items[1]);
+                if (items.length >= 6)
+                {
+                    int red = Integer.parseInt(items[2]);
+                    int green = Integer.parseInt(items[3]);
+                    int blue = Integer.parseInt(items[4]);
+                    double mag = Double.parseDouble(items[5]);
+                    writer.write(longit, lat, (red << 16) | (green << 8) | blue, mag);
+                }
+                else
+                {
+                    writer.write(longit, lat, Integer.parseInt(items[2]));
+                }
+            }
+        }
+        if (writer == null)
+        {
+            writer = new Writer(output, false);
+        }
+        writer.close();
+        System.err.println("Wrote " + writer.size() + " points to " + output);
+    }
+}
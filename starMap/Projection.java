@@ -0,0 +1,281 @@
+/*
+* Projection
+* Compilation: javac Projection.java
+*
+* The map projections used by createMapStdDraw. Each map type has its own
+* subclass, chosen once per map with forType(), and project() computes both
+* the x and y position of a point in one call so that any work shared between
+* the two coordinates is only done once.
+*
+* The map types are the same as in createMapStdDraw:
+* 0 is Equirectangular
+* 1 is Mercator
+* 2 is Lagrange Conformal
+* 3 is Eckert II
+* 4 is Kavrayskiy VII
+* 5 is two Stereographic hemispheres (centered at the poles) placed together.
+* 6 is the gnomonic cube
+*
+* Note that longit is the north-south position of a point (-90 to 90) and lat
+* is the east-west one (-180 to 180). Apart from the stereographic
+* hemispheres, which are laid out for viewing the sky from inside the sphere,
+* these are the same projections as in sphereSurface.
+*/
+
+public abstract class Projection
+{
+    // size of the map being drawn
+    protected final int width;
+    protected final int height;
+
+    protected Projection(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+    }
+
+    // calculates the position of the point at longitude longit and latitude
+    // lat, storing the x position in xy[0] and the y position in xy[1]
+    public abstract void project(double longit, double lat, double[] xy);
+
+    // returns the projection for map type type on a map of size width by height
+    public static Projection forType(int type, int width, int height)
+    {
+        switch (type)
+        {
+            case 6:
+                return new GnomonicCube(width, height);
+            case 5:
+                return new StereographicHemispheres(width, height);
+            case 4:
+                return new KavrayskiyVII(width, height);
+            case 3:
+                return new EckertII(width, height);
+            case 2:
+                return new Lagrange(width, height);
+            case 1:
+                return new Mercator(width, height);
+            case 0:
+                return new Equirectangular(width, height);
+            default:
+                throw new IllegalArgumentException("Invalid Map Type");
+        }
+    }
+
+    // calculates great circle distance between points (long1, lat1) and (long2, lat2)
+    private static double distance(double long1, double lat1, double long2, double lat2)
+    {
+        double a = Math.sin((long2-long1)*(Math.PI/180)/2);
+        double b = Math.sin((lat2-lat1)*(Math.PI/180)/2);
+        double c = b*b*Math.cos(long1*(Math.PI/180))*Math.cos(long2*(Math.PI/180));
+        return 2*Math.asin(Math.sqrt(a*a + c));
+    }
+
+    // type 0
+    private static final class Equirectangular extends Projection
+    {
+        Equirectangular(int width, int height)
+        {
+            super(width, height);
+        }
+
+        public void project(double longit, double lat, double[] xy)
+        {
+            xy[0] = (lat/360.0)*(width-1) + (width-1)/2.0;
+            xy[1] = -1*(longit/180)*(height-1) + (height-1)/2.0;
+        }
+    }
+
+    // type 1
+    private static final class Mercator extends Projection
+    {
+        Mercator(int width, int height)
+        {
+            super(width, height);
+        }
+
+        public void project(double longit, double lat, double[] xy)
+        {
+            xy[0] = ((lat/360.0)*(width-1)) + (width-1)/2.0;
+
+            longit *= (Math.PI/180);
+            double y1 = Math.log(Math.tan(0.25*Math.PI + 0.5*longit));
+            y1 *= -1*height/4.0;
+            y1 += height/2.0;
+            y1 = Math.max(Math.min(y1,height-1),0);
+            xy[1] = y1;
+        }
+    }
+
+    // type 2
+    private static final class Lagrange extends Projection
+    {
+        Lagrange(int width, int height)
+        {
+            super(width, height);
+        }
+
+        public void project(double longit, double lat, double[] xy)
+        {
+            longit *= (Math.PI/180);
+            lat *= (Math.PI/180);
+            double sinPhiPrime = Math.tan(longit/2);
+            double cosPhiPrime = Math.sqrt(1-sinPhiPrime*sinPhiPrime);//Math.cos(Math.asin(sinPhiPrime));
+            double cosHalfLat = Math.cos(lat/2);
+            xy[0] = ((height-1)/2.0)*cosPhiPrime*Math.sin(lat/2)/(1
+                        + cosPhiPrime*cosHalfLat) + (width/2);
+            xy[1] = -1*((height/2.0-1))*sinPhiPrime/(1 + cosPhiPrime*cosHalfLat) + (height/2);
+        }
+    }
+
+    // type 3
+    private static final class EckertII extends Projection
+    {
+        private final double scaleX;
+        private final double scaleY;
+
+        EckertII(int width, int height)
+        {
+            super(width, height);
+            scaleX = ((width-2)/2.0)/(2*Math.PI);
+            scaleY = ((width-1)/2.0)/2;
+        }
+
+        public void project(double longit, double lat, double[] xy)
+        {
+            boolean onEquator = (longit == 0);
+            longit *= (Math.PI/180);
+            lat *= (Math.PI/180);
+            double root = Math.sqrt((4 - 3*Math.sin(Math.abs(longit))));
+            xy[0] = scaleX*lat*root + width/2.0;
+            if (onEquator)
+            {
+                xy[1] = height/2.0;
+            }
+            else
+            {
+                double y3 = (2 - root)*(longit/Math.abs(longit));
+                xy[1] = -1*scaleY * y3 + height/2.0;
+            }
+        }
+    }
+
+    // type 4
+    private static final class KavrayskiyVII extends Projection
+    {
+        private final double scale;
+
+        KavrayskiyVII(int width, int height)
+        {
+            super(width, height);
+            scale = ((width-2)/2.0)*Math.sqrt(3)/(Math.PI*1.5);
+        }
+
+        public void project(double longit, double lat, double[] xy)
+        {
+            longit *= (Math.PI/180);
+            lat *= (Math.PI/180);
+            xy[0] = scale*1.5*lat*Math.sqrt((Math.PI*Math.PI)/3 - longit*longit)/Math.PI+width/2.0;
+            xy[1] = -1*scale*longit+height/2.0;
+        }
+    }
+
+    // type 5
+    private static final class StereographicHemispheres extends Projection
+    {
+        private final double scale;
+
+        StereographicHemispheres(int width, int height)
+        {
+            super(width, height);
+            scale = Math.min((height-1)/2.0, (width-1)/4.0);
+        }
+
+        public void project(double longit, double lat, double[] xy)
+        {
+            double phi;
+            if (longit < 0) phi = -longit;
+            else phi = longit;
+            phi += 90;
+            phi *= (Math.PI/180);
+            double theta = (lat + 90) * (Math.PI/180);
+            double r = scale * (1/Math.tan(phi/2.0));
+            if (longit < 0)
+            {
+                xy[0] = (int) (r*Math.cos(theta) + (width-1)/2 +-1*scale);
+            }
+            else
+            {
+                xy[0] = (int) (-1*r*Math.cos(theta) + (width-1)/2 + scale);
+            }
+            xy[1] = (int) (r*Math.sin(theta) + (height-1)/2);
+        }
+    }
+
+    // type 6
+    private static final class GnomonicCube extends Projection
+    {
+        private final int sideLength;
+
+        GnomonicCube(int width, int height)
+        {
+            super(width, height);
+            sideLength = Math.min(((width-1)/4),((height-1)/3));
+        }
+
+        public void project(double longit, double lat, double[] xy)
+        {
+            int latOffset = 225;
+            lat += latOffset;
+            double xCenter = 0.0;
+            double yCenter = 0.0;
+            double longCenter;
+            double latCenter;
+            double normalLat = lat;
+            while (normalLat < 0)
+            {
+                normalLat += 360;
+            }
+            double targetLat = (normalLat)-(normalLat%90) + 45;
+            int i;
+            //-135 puts it above the second square
+            // 45 above the 4th square
+            double poleLatChange = 45;
+            if (distance(-45,targetLat,longit,lat) > Math.PI/2) // north
+            {
+                lat += poleLatChange;
+                i = -1;
+                xCenter = 3.5*sideLength;
+                yCenter = 0.5*sideLength;
+                longCenter = 90.0;
+                latCenter = 0.0;
+            }
+            else if (distance(45,targetLat,longit,lat) > Math.PI/2) // south
+            {
+                lat += poleLatChange;
+                i = -2;
+                xCenter = 3.5*sideLength;
+                yCenter = 2.5*sideLength;
+                longCenter = -90.0;
+                latCenter = 0.0;
+            }
+            else
+            {
+                i = ((int) Math.floor(normalLat/90))%4;
+                longCenter = 0.0;
+                latCenter = 90*i + 45;
+                xCenter = (i+0.5)*sideLength;
+                yCenter = 1.5*sideLength;
+            }
+            double sinLongCenter = Math.sin(longCenter*(Math.PI/180));
+            double cosLongCenter = Math.cos(longCenter*(Math.PI/180));
+            double sinLongit = Math.sin(longit*(Math.PI/180));
+            double cosLongit = Math.cos(longit*(Math.PI/180));
+            double cosLatDiff = Math.cos((lat-latCenter)*(Math.PI/180));
+            double cosC = sinLongCenter*sinLongit + cosLongCenter*cosLongit*cosLatDiff;
+            xy[0] = xCenter + sideLength/2*cosLongit*Math.sin((lat-latCenter)*(Math.PI/180))/cosC;
+            xy[1] = yCenter - sideLength/(2)*(cosLongCenter*sinLongit
+                   - sinLongCenter*cosLongit*cosLatDiff)/cosC;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+* SkyView
+* Compilation: javac SkyView.java
+*
+* Turns the positions of stars, as read from a point file, into where they
+* appear in the sky of an observer at a given latitude and longitude at a
+* given time, for createMapStdDraw -observer. The position of every star is
+* turned into a unit vector once, and for each time all of them are rotated
+* to the horizon of the observer by a single matrix, working over arrays of
+* doubles, so drawing the sky again at another time only costs one rotation
+* per star.
+*
+* Points are in the form used by point files: the first value is the
+* declination (-90 to 90) and the second is 180 minus the right ascension in
+* degrees (as printed by readHYGData). Horizon positions are given the same
+* way, with the altitude in place of the declination and the azimuth
+* (measured from north through east) in place of the right ascension, so they
+* can be drawn with the same projections.
+*/
+
+public final class SkyView
+{
+    // the unit vector of each star, with x towards 0h of right ascension on
+    // the celestial equator, y towards 6h and z towards the north pole
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+
+    // the stars at longits[0..n-1] and lats[0..n-1], in point file form
+    public SkyView(double[] longits, double[] lats, int n)
+    {
+        xs = new double[n];
+        ys = new double[n];
+        zs = new double[n];
+        for (int i = 0; i < n; i++)
+        {
+            double dec = Math.toRadians(longits[i]);
+            double ra = Math.toRadians(180 - lats[i]);
+            xs[i] = Math.cos(dec)*Math.cos(ra);
+            ys[i] = Math.cos(dec)*Math.sin(ra);
+            zs[i] = Math.sin(dec);
+        }
+    }
+
+    // the number of stars
+    public int size()
+    {
+        return xs.length;
+    }
+
+    // the local sidereal time, in degrees, at the given longitude (east
+    // positive) at the given time in milliseconds since 1970 UTC
+    public static double siderealTime(long millis, double longitude)
+    {
+        // days since noon UTC on 1 January 2000
+        double days = millis / 86400000.0 - 10957.5;
+        double time = 280.46061837 + 360.98564736629*days + longitude;
+        return ((time % 360) + 360) % 360;
+    }
+
+    // put the position of every star in the sky at the given latitude and
+    // local sidereal time (in degrees) into alts and azimuths, in point file
+    // form. Stars below the horizon have a negative altitude.
+    public void toHorizon(double latitude, double siderealTime, double[] alts, double[] azimuths)
+    {
+        double sinLat = Math.sin(Math.toRadians(latitude));
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        double sinTime = Math.sin(Math.toRadians(siderealTime));
+        double cosTime = Math.cos(Math.toRadians(siderealTime));
+
+        // rows of the rotation to north, east and up on the horizon
+        double northX = -sinLat*cosTime;
+        double northY = -sinLat*sinTime;
+        double northZ = cosLat;
+        double eastX = -sinTime;
+        double eastY = cosTime;
+        double upX = cosLat*cosTime;
+        double upY = cosLat*sinTime;
+        double upZ = sinLat;
+
+        int n = xs.length;
+        for (int i = 0; i < n; i++)
+        {
+            double x = xs[i];
+            double y = ys[i];
+            double z = zs[i];
+            double north = northX*x + northY*y + northZ*z;
+            double east = eastX*x + eastY*y;
+            double up = upX*x + upY*y + upZ*z;
+            alts[i] = Math.toDegrees(Math.asin(Math.max(-1, Math.min(1, up))));
+            double azimuth = Math.toDegrees(Math.atan2(east, north));
+            if (azimuth < 0)
+            {
+                azimuth += 360;
+            }
+            azimuths[i] = 180 - azimuth;
+        }
+    }
+}
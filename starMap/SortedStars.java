@@ -0,0 +1,37 @@
+/*
+* SortedStars
+* Compilation: javac SortedStars.java
+*
+* Stars read one at a time in right ascension order, with stars that have no
+* right ascension last, for readHYGData to combine and print in blocks. The
+* stars at the very end of the order (from some right ascension up to 24h)
+* are also available all at once, since stars just after 0h at the start of
+* the order need them to find close stars across 0h/24h.
+*
+* Implemented by StarRuns, which merges runs sorted on disk, and StarCache,
+* which reads a catalog that was sorted when it was cached.
+*/
+
+import java.io.IOException;
+
+public interface SortedStars extends AutoCloseable
+{
+    // the number of stars
+    long size();
+
+    boolean hasNext();
+
+    // the right ascension of the next star
+    double peekRA();
+
+    // add the next star to the end of a catalog
+    void next(StarCatalog into) throws IOException;
+
+    // the last stars in the order apart from any with no right ascension,
+    // starting at position getTailStart()
+    StarCatalog getTail();
+
+    long getTailStart();
+
+    void close() throws IOException;
+}
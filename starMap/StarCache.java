@@ -0,0 +1,291 @@
+/*
+* StarCache
+* Compilation: javac StarCache.java
+*
+* A binary copy of a HYG catalog CSV for readHYGData, already sorted by right
+* ascension and with the normalized magnitude of every star worked out, so
+* that later runs on the same catalog neither parse, compute nor sort. The
+* cache is built once with build() and then memory-mapped by open(), which
+* reads the stars back in order as SortedStars.
+*
+* The cache records the size and CRC-32 checksum of the CSV it was built
+* from, and open() returns null if they no longer match, so a changed
+* catalog is never read from a stale cache.
+*
+* Format (big-endian): the int 0x48594743 ("HYGC"), the int version, the
+* long size of the CSV, the long checksum of the CSV and the long number of
+* stars, followed by one record per star of six doubles: RA, Dec, Distance,
+* Mag, the normalized magnitude and ColorIndex.
+*/
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+public final class StarCache implements SortedStars
+{
+    private static final int MAGIC = 0x48594743;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 6*8;
+    // the file is mapped this many records at a time
+    private static final int WINDOW_RECORDS = 1 << 20;
+
+    // the columns a cache holds
+    public static final int COLUMNS = StarCatalog.RA + StarCatalog.DEC + StarCatalog.DISTANCE
+                                      + StarCatalog.MAG + StarCatalog.NORM_MAG + StarCatalog.COLOR_INDEX;
+
+    private final FileChannel channel;
+    private final int columns;
+    private final long size;
+    private StarCatalog tail;
+    private long tailStart;
+
+    // the mapped records, starting at record windowStart
+    private MappedByteBuffer window;
+    private long windowStart = -1;
+    // the next star to read
+    private long position = 0;
+
+    private StarCache(FileChannel channel, int columns, long size)
+    {
+        this.channel = channel;
+        this.columns = columns;
+        this.size = size;
+    }
+
+    // memory-map the cache of a CSV to read the given columns (some of
+    // COLUMNS) of its stars, keeping those with right ascension of at least
+    // tailFrom in memory as the tail. Returns null if there is no cache or it
+    // was built from a different CSV.
+    public static StarCache open(File cacheFile, File csvFile, int columns, double tailFrom)
+        throws IOException
+    {
+        if ((columns & COLUMNS) != columns)
+        {
+            throw new IllegalArgumentException("Column " + (columns & ~COLUMNS) + " is not cached");
+        }
+        if (!cacheFile.isFile())
+        {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
+        StarCache cache = null;
+        try
+        {
+            if (channel.size() < HEADER_SIZE)
+            {
+                return null;
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            long numStars = header.getLong(24);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                || header.getLong(8) != csvFile.length()
+                || channel.size() != HEADER_SIZE + numStars*RECORD_SIZE
+                || header.getLong(16) != checksum(csvFile))
+            {
+                return null;
+            }
+            cache = new StarCache(channel, columns, numStars);
+            cache.findTail(tailFrom);
+            return cache;
+        } finally
+        {
+            if (cache == null)
+            {
+                channel.close();
+            }
+        }
+    }
+
+    // sort the stars of a CSV by right ascension and write them to a cache,
+    // sorting at most chunkSize stars at a time in memory (see StarRuns)
+    public static void build(File cacheFile, File csvFile, int chunkSize) throws IOException
+    {
+        long checksum = checksum(csvFile);
+        File partFile = new File(cacheFile.getPath() + ".part");
+        try (HYGCsv csv = HYGCsv.open(csvFile);
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(partFile), 1 << 16)))
+        {
+            StarCatalog stars = StarCatalog.read(csv, COLUMNS, chunkSize);
+            if (stars.size() < chunkSize)
+            {
+                stars.sortByRA();
+                writeHeader(out, csvFile.length(), checksum, stars.size());
+                for (int i = 0; i < stars.size(); i++)
+                {
+                    writeRecord(out, stars, i);
+                }
+            }
+            else
+            {
+                try (StarRuns runs = StarRuns.create(stars, csv, null, chunkSize,
+                                                     Double.POSITIVE_INFINITY))
+                {
+                    stars = new StarCatalog(COLUMNS);
+                    writeHeader(out, csvFile.length(), checksum, runs.size());
+                    while (runs.hasNext())
+                    {
+                        runs.next(stars);
+                        writeRecord(out, stars, 0);
+                        stars.truncate(0);
+                    }
+                }
+            }
+        }
+        // only replace an old cache once the new one is complete
+        Files.move(partFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // the CRC-32 checksum of every byte of a file
+    public static long checksum(File file) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long length = channel.size();
+            for (long start = 0; start < length; start += 1L << 26)
+            {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                       Math.min(1L << 26, length - start)));
+            }
+        }
+        return crc.getValue();
+    }
+
+    public long size()
+    {
+        return size;
+    }
+
+    public boolean hasNext()
+    {
+        return position < size;
+    }
+
+    public double peekRA()
+    {
+        return value(position, 0);
+    }
+
+    public void next(StarCatalog into) throws IOException
+    {
+        int offset = offset(position);
+        into.add(window.getDouble(offset), window.getDouble(offset + 8),
+                 window.getDouble(offset + 16), window.getDouble(offset + 24),
+                 window.getDouble(offset + 32), window.getDouble(offset + 40));
+        position++;
+    }
+
+    public StarCatalog getTail()
+    {
+        return tail;
+    }
+
+    public long getTailStart()
+    {
+        return tailStart;
+    }
+
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    // the stars from the first with right ascension of at least tailFrom up
+    // to the first with none, which come last
+    private void findTail(double tailFrom) throws IOException
+    {
+        tailStart = firstWhere(tailFrom);
+        long end = firstWhere(Double.NaN);
+        tail = new StarCatalog(columns);
+        for (position = tailStart; position < end; )
+        {
+            next(tail);
+        }
+        position = 0;
+    }
+
+    // the first star that does not come before a star with right ascension
+    // ra (all of them, if ra is NaN, except those with no right ascension)
+    private long firstWhere(double ra) throws IOException
+    {
+        long lo = 0;
+        long hi = size;
+        while (lo < hi)
+        {
+            long middle = (lo + hi) >>> 1;
+            if (StarCatalog.raBefore(value(middle, 0), ra))
+            {
+                lo = middle + 1;
+            }
+            else
+            {
+                hi = middle;
+            }
+        }
+        return lo;
+    }
+
+    // the given value (0 for RA, 1 for Dec, and so on) of star i
+    private double value(long i, int column)
+    {
+        return window(i).getDouble(offset(i) + 8*column);
+    }
+
+    // the offset in the window of star i, mapping the window around it first
+    // if needed
+    private int offset(long i)
+    {
+        window(i);
+        return (int) ((i - windowStart)*RECORD_SIZE);
+    }
+
+    private MappedByteBuffer window(long i)
+    {
+        if (window == null || i < windowStart || i >= windowStart + WINDOW_RECORDS)
+        {
+            long start = i - i % WINDOW_RECORDS;
+            long records = Math.min(WINDOW_RECORDS, size - start);
+            try
+            {
+                window = channel.map(FileChannel.MapMode.READ_ONLY,
+                                     HEADER_SIZE + start*RECORD_SIZE, records*RECORD_SIZE);
+            } catch (IOException e)
+            {
+                throw new IllegalStateException("Cannot read star cache", e);
+            }
+            windowStart = start;
+        }
+        return window;
+    }
+
+    private static void writeHeader(DataOutputStream out, long csvSize, long checksum, long numStars)
+        throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(csvSize);
+        out.writeLong(checksum);
+        out.writeLong(numStars);
+    }
+
+    private static void writeRecord(DataOutputStream out, StarCatalog stars, int i) throws IOException
+    {
+        out.writeDouble(stars.getRA(i));
+        out.writeDouble(stars.getDec(i));
+        out.writeDouble(stars.getDistance(i));
+        out.writeDouble(stars.getMag(i));
+        out.writeDouble(stars.getNormMag(i));
+        out.writeDouble(stars.getColorIndex(i));
+    }
+}
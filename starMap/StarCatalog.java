@@ -0,0 +1,522 @@
+/*
+* StarCatalog
+* Compilation: javac StarCatalog.java
+*
+* The stars of a HYG catalog CSV stored by column, one primitive array per
+* value, for readHYGData. Only the columns asked for when loading are parsed
+* and kept (the others are never read from the file), so a star costs a few
+* doubles rather than an object with strings, and sorting and scanning run
+* over plain arrays.
+*
+* Columns are chosen by adding together the column constants, for example
+* StarCatalog.load(file, StarCatalog.RA + StarCatalog.DEC + StarCatalog.MAG).
+* Getting a value from a column that was not loaded is an error. The columns
+* grow as stars are added, so there is no limit on the number of stars other
+* than memory; catalogs too large for that are sorted in pieces by StarRuns.
+*/
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public final class StarCatalog
+{
+    // columns
+    public static final int RA = 1;
+    public static final int DEC = 2;
+    public static final int DISTANCE = 4; // in parsecs
+    public static final int MAG = 8;
+    public static final int ABS_MAG = 16;
+    public static final int COLOR_INDEX = 32;
+    public static final int IDS = 64;     // StarID, Hip and HD
+    public static final int NORM_MAG = 128; // see getNormMag
+
+    // ranges of at most this many stars are sorted by a single task
+    private static final int SORT_THRESHOLD = 1 << 13;
+
+    private final int columns;
+    private int size = 0;
+    private int capacity;
+
+    // each is null unless its column was loaded
+    private double[] ra;
+    private double[] dec;
+    private double[] distance;
+    private double[] mag;
+    private double[] absMag;
+    private double[] colorIndex;
+    private double[] normMag;
+    private int[] starID;
+    private int[] hip;
+    private int[] hd;
+
+    // an empty catalog with the given columns
+    public StarCatalog(int columns)
+    {
+        this(columns, 1 << 10);
+    }
+
+    private StarCatalog(int columns, int capacity)
+    {
+        this.columns = columns;
+        this.capacity = capacity;
+        if ((columns & RA) != 0)          ra = new double[capacity];
+        if ((columns & DEC) != 0)         dec = new double[capacity];
+        if ((columns & DISTANCE) != 0)    distance = new double[capacity];
+        if ((columns & MAG) != 0)         mag = new double[capacity];
+        if ((columns & ABS_MAG) != 0)     absMag = new double[capacity];
+        if ((columns & COLOR_INDEX) != 0) colorIndex = new double[capacity];
+        if ((columns & NORM_MAG) != 0)    normMag = new double[capacity];
+        if ((columns & IDS) != 0)
+        {
+            starID = new int[capacity];
+            hip = new int[capacity];
+            hd = new int[capacity];
+        }
+    }
+
+    // read the given columns of every star in a HYG catalog CSV
+    public static StarCatalog load(File file, int columns) throws IOException
+    {
+        try (HYGCsv csv = HYGCsv.open(file))
+        {
+            return read(csv, columns, Integer.MAX_VALUE);
+        }
+    }
+
+    // read the given columns of the next stars in a HYG catalog CSV, stopping
+    // after maxStars stars. The catalog has fewer than maxStars stars only if
+    // the end of the file was reached.
+    public static StarCatalog read(HYGCsv csv, int columns, int maxStars) throws IOException
+    {
+        return read(csv, columns, maxStars, null);
+    }
+
+    // as above, but only the stars the filter keeps are read (all of them if
+    // the filter is null); rows it drops are never parsed beyond what the
+    // filter looks at
+    public static StarCatalog read(HYGCsv csv, int columns, int maxStars, StarFilter filter)
+        throws IOException
+    {
+        StarCatalog catalog = new StarCatalog(columns);
+        while (catalog.size < maxStars && csv.next())
+        {
+            if (filter == null || filter.keep(csv))
+            {
+                catalog.add(csv);
+            }
+        }
+        return catalog;
+    }
+
+    // copy the loaded columns of the current row of the CSV
+    private void add(HYGCsv row)
+    {
+        ensureCapacity(size + 1);
+        int i = size;
+        if (ra != null)         ra[i] = row.getRA();
+        if (dec != null)        dec[i] = row.getDec();
+        if (distance != null)   distance[i] = row.getDistance();
+        if (mag != null)        mag[i] = row.getMag();
+        if (absMag != null)     absMag[i] = row.getAbsMag();
+        if (colorIndex != null) colorIndex[i] = row.getColorIndex();
+        if (normMag != null)    normMag[i] = normMag(row.getDistance());
+        if (starID != null)
+        {
+            starID[i] = row.getStarID();
+            hip[i] = row.getHip();
+            hd[i] = row.getHD();
+        }
+        size++;
+    }
+
+    // add a copy of star i of another catalog with the same columns
+    public void add(StarCatalog from, int i)
+    {
+        if (from.columns != columns)
+        {
+            throw new IllegalArgumentException("Catalogs have different columns");
+        }
+        ensureCapacity(size + 1);
+        int k = size;
+        if (ra != null)         ra[k] = from.ra[i];
+        if (dec != null)        dec[k] = from.dec[i];
+        if (distance != null)   distance[k] = from.distance[i];
+        if (mag != null)        mag[k] = from.mag[i];
+        if (absMag != null)     absMag[k] = from.absMag[i];
+        if (colorIndex != null) colorIndex[k] = from.colorIndex[i];
+        if (normMag != null)    normMag[k] = from.normMag[i];
+        if (starID != null)
+        {
+            starID[k] = from.starID[i];
+            hip[k] = from.hip[i];
+            hd[k] = from.hd[i];
+        }
+        size++;
+    }
+
+    // add a star with the given values, of which only those of the loaded
+    // columns are kept. The catalog must not have the ABS_MAG or IDS columns.
+    public void add(double ra, double dec, double distance, double mag,
+                    double normMag, double colorIndex)
+    {
+        if (absMag != null || starID != null)
+        {
+            throw new IllegalStateException("Catalog has columns with no values given");
+        }
+        ensureCapacity(size + 1);
+        int k = size;
+        if (this.ra != null)         this.ra[k] = ra;
+        if (this.dec != null)        this.dec[k] = dec;
+        if (this.distance != null)   this.distance[k] = distance;
+        if (this.mag != null)        this.mag[k] = mag;
+        if (this.normMag != null)    this.normMag[k] = normMag;
+        if (this.colorIndex != null) this.colorIndex[k] = colorIndex;
+        size++;
+    }
+
+    // write the loaded columns of star i, to be read back by readStar
+    public void writeStar(DataOutput out, int i) throws IOException
+    {
+        if (ra != null)         out.writeDouble(ra[i]);
+        if (dec != null)        out.writeDouble(dec[i]);
+        if (distance != null)   out.writeDouble(distance[i]);
+        if (mag != null)        out.writeDouble(mag[i]);
+        if (absMag != null)     out.writeDouble(absMag[i]);
+        if (colorIndex != null) out.writeDouble(colorIndex[i]);
+        if (normMag != null)    out.writeDouble(normMag[i]);
+        if (starID != null)
+        {
+            out.writeInt(starID[i]);
+            out.writeInt(hip[i]);
+            out.writeInt(hd[i]);
+        }
+    }
+
+    // add a star written by writeStar from a catalog with the same columns
+    public void readStar(DataInput in) throws IOException
+    {
+        ensureCapacity(size + 1);
+        int k = size;
+        if (ra != null)         ra[k] = in.readDouble();
+        if (dec != null)        dec[k] = in.readDouble();
+        if (distance != null)   distance[k] = in.readDouble();
+        if (mag != null)        mag[k] = in.readDouble();
+        if (absMag != null)     absMag[k] = in.readDouble();
+        if (colorIndex != null) colorIndex[k] = in.readDouble();
+        if (normMag != null)    normMag[k] = in.readDouble();
+        if (starID != null)
+        {
+            starID[k] = in.readInt();
+            hip[k] = in.readInt();
+            hd[k] = in.readInt();
+        }
+        size++;
+    }
+
+    // remove the first n stars, moving the rest to the front
+    public void removeFirst(int n)
+    {
+        int rest = size - n;
+        if (ra != null)         System.arraycopy(ra, n, ra, 0, rest);
+        if (dec != null)        System.arraycopy(dec, n, dec, 0, rest);
+        if (distance != null)   System.arraycopy(distance, n, distance, 0, rest);
+        if (mag != null)        System.arraycopy(mag, n, mag, 0, rest);
+        if (absMag != null)     System.arraycopy(absMag, n, absMag, 0, rest);
+        if (colorIndex != null) System.arraycopy(colorIndex, n, colorIndex, 0, rest);
+        if (normMag != null)    System.arraycopy(normMag, n, normMag, 0, rest);
+        if (starID != null)
+        {
+            System.arraycopy(starID, n, starID, 0, rest);
+            System.arraycopy(hip, n, hip, 0, rest);
+            System.arraycopy(hd, n, hd, 0, rest);
+        }
+        size = rest;
+    }
+
+    // remove every star after the first n
+    public void truncate(int n)
+    {
+        size = Math.min(size, n);
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    // the columns that were loaded, added together
+    public int getColumns()
+    {
+        return columns;
+    }
+
+    // true if all of the given columns were loaded
+    public boolean hasColumns(int columns)
+    {
+        return (this.columns & columns) == columns;
+    }
+
+    // getters for star i
+
+    public double getRA(int i)
+    {
+        return column(ra, RA)[i];
+    }
+
+    public double getDec(int i)
+    {
+        return column(dec, DEC)[i];
+    }
+
+    public double getDistance(int i)
+    {
+        return column(distance, DISTANCE)[i];
+    }
+
+    public double getMag(int i)
+    {
+        return column(mag, MAG)[i];
+    }
+
+    public double getAbsMag(int i)
+    {
+        return column(absMag, ABS_MAG)[i];
+    }
+
+    public double getColorIndex(int i)
+    {
+        return column(colorIndex, COLOR_INDEX)[i];
+    }
+
+    public int getStarID(int i)
+    {
+        return column(starID, IDS)[i];
+    }
+
+    public int getHip(int i)
+    {
+        return column(hip, IDS)[i];
+    }
+
+    public int getHD(int i)
+    {
+        return column(hd, IDS)[i];
+    }
+
+    // the apparent magnitude the star would have if it were as bright as the
+    // sun, from the NORM_MAG column if it was loaded and otherwise worked out
+    // from the DISTANCE column
+    public double getNormMag(int i)
+    {
+        if (normMag != null)
+        {
+            return normMag[i];
+        }
+        return normMag(getDistance(i));
+    }
+
+    // the apparent magnitude a star as bright as the sun would have at the
+    // given distance
+    public static double normMag(double distance)
+    {
+        return 4.83 + 5*((Math.log10(distance))-1);//4.83 is sun's mag
+    }
+
+    private double[] column(double[] values, int column)
+    {
+        if (values == null)
+        {
+            throw new IllegalStateException("Column " + column + " was not loaded");
+        }
+        return values;
+    }
+
+    private int[] column(int[] values, int column)
+    {
+        if (values == null)
+        {
+            throw new IllegalStateException("Column " + column + " was not loaded");
+        }
+        return values;
+    }
+
+    // true if a comes before b in right ascension order, where stars with no
+    // right ascension (NaN) come after all others
+    public static boolean raBefore(double a, double b)
+    {
+        return a < b || (b != b && a == a);
+    }
+
+    // sort the stars by right ascension. The sort is stable, so stars with
+    // the same right ascension stay in the order they were read, and stars
+    // with no right ascension go at the end. Large catalogs are sorted using
+    // all available processors; since the sort is stable the result is the
+    // same however many there are.
+    public void sortByRA()
+    {
+        double[] keys = column(ra, RA);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            order[i] = i;
+        }
+        ForkJoinPool.commonPool().invoke(new SortAction(order, new int[size], keys, 0, size));
+        permute(order);
+    }
+
+    // sorts order[lo, hi) by keys, sorting each half as a separate task
+    // until the halves are small enough to sort directly
+    private static final class SortAction extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] order;
+        private final int[] scratch;
+        private final double[] keys;
+        private final int lo;
+        private final int hi;
+
+        SortAction(int[] order, int[] scratch, double[] keys, int lo, int hi)
+        {
+            this.order = order;
+            this.scratch = scratch;
+            this.keys = keys;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute()
+        {
+            if (hi - lo <= SORT_THRESHOLD)
+            {
+                mergeSort(order, scratch, keys, lo, hi);
+                return;
+            }
+            int middle = (lo + hi) >>> 1;
+            invokeAll(new SortAction(order, scratch, keys, lo, middle),
+                      new SortAction(order, scratch, keys, middle, hi));
+            merge(order, scratch, keys, lo, middle, hi);
+        }
+    }
+
+    // stable merge sort of order[lo, hi) by keys, using scratch as space
+    private static void mergeSort(int[] order, int[] scratch, double[] keys, int lo, int hi)
+    {
+        if (hi - lo < 32)
+        {
+            // insertion sort for small ranges
+            for (int i = lo + 1; i < hi; i++)
+            {
+                int item = order[i];
+                int j = i;
+                while (j > lo && raBefore(keys[item], keys[order[j-1]]))
+                {
+                    order[j] = order[j-1];
+                    j--;
+                }
+                order[j] = item;
+            }
+            return;
+        }
+        int middle = (lo + hi) >>> 1;
+        mergeSort(order, scratch, keys, lo, middle);
+        mergeSort(order, scratch, keys, middle, hi);
+        merge(order, scratch, keys, lo, middle, hi);
+    }
+
+    // merge the sorted ranges order[lo, middle) and order[middle, hi)
+    private static void merge(int[] order, int[] scratch, double[] keys, int lo, int middle, int hi)
+    {
+        if (!raBefore(keys[order[middle]], keys[order[middle-1]]))
+        {
+            return;
+        }
+        System.arraycopy(order, lo, scratch, lo, hi - lo);
+        int left = lo;
+        int right = middle;
+        for (int k = lo; k < hi; k++)
+        {
+            // take from the left half unless the right one is strictly smaller
+            if (right >= hi || (left < middle && !raBefore(keys[scratch[right]], keys[scratch[left]])))
+            {
+                order[k] = scratch[left++];
+            }
+            else
+            {
+                order[k] = scratch[right++];
+            }
+        }
+    }
+
+    // rearrange every loaded column so star i becomes the old star order[i]
+    private void permute(int[] order)
+    {
+        ra = permute(ra, order);
+        dec = permute(dec, order);
+        distance = permute(distance, order);
+        mag = permute(mag, order);
+        absMag = permute(absMag, order);
+        colorIndex = permute(colorIndex, order);
+        normMag = permute(normMag, order);
+        starID = permute(starID, order);
+        hip = permute(hip, order);
+        hd = permute(hd, order);
+    }
+
+    // grow the columns, if needed, to hold at least needed stars
+    private void ensureCapacity(int needed)
+    {
+        if (needed <= capacity)
+        {
+            return;
+        }
+        int grown = (int) Math.min(Math.max(needed, 2L*capacity), Integer.MAX_VALUE - 8);
+        capacity = grown;
+        if (ra != null)         ra = Arrays.copyOf(ra, grown);
+        if (dec != null)        dec = Arrays.copyOf(dec, grown);
+        if (distance != null)   distance = Arrays.copyOf(distance, grown);
+        if (mag != null)        mag = Arrays.copyOf(mag, grown);
+        if (absMag != null)     absMag = Arrays.copyOf(absMag, grown);
+        if (colorIndex != null) colorIndex = Arrays.copyOf(colorIndex, grown);
+        if (normMag != null)    normMag = Arrays.copyOf(normMag, grown);
+        if (starID != null)
+        {
+            starID = Arrays.copyOf(starID, grown);
+            hip = Arrays.copyOf(hip, grown);
+            hd = Arrays.copyOf(hd, grown);
+        }
+    }
+
+    private static double[] permute(double[] values, int[] order)
+    {
+        if (values == null)
+        {
+            return null;
+        }
+        double[] result = new double[values.length];
+        for (int i = 0; i < order.length; i++)
+        {
+            result[i] = values[order[i]];
+        }
+        return result;
+    }
+
+    private static int[] permute(int[] values, int[] order)
+    {
+        if (values == null)
+        {
+            return null;
+        }
+        int[] result = new int[values.length];
+        for (int i = 0; i < order.length; i++)
+        {
+            result[i] = values[order[i]];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+* StarColors
+* Compilation: javac StarColors.java
+*
+* The colors readHYGData gives stars, from their B-V color index. Working out
+* a color takes a chain of piecewise polynomials, so the colors of every
+* index from -0.400 to 2.000 in steps of 0.001 (the precision of the HYG
+* catalog) are worked out once into a table of packed 0xRRGGBB ints. An
+* index that lies exactly on one of those steps is looked up; any other is
+* worked out directly, so every color is exactly what compute() gives.
+*/
+
+public final class StarColors
+{
+    // the table covers color indices of FIRST_STEP/STEPS to LAST_STEP/STEPS
+    private static final int STEPS = 1000;
+    private static final int FIRST_STEP = -400;
+    private static final int LAST_STEP = 2000;
+
+    private static final int[] TABLE = new int[LAST_STEP - FIRST_STEP + 1];
+    static
+    {
+        for (int k = 0; k < TABLE.length; k++)
+        {
+            TABLE[k] = compute(step(k));
+        }
+    }
+
+    private StarColors()
+    {
+    }
+
+    // the color of a star with the given color index, packed as 0xRRGGBB
+    public static int rgb(double colorIndex)
+    {
+        // indices out of range get the color of the nearest end
+        double bv = colorIndex;
+        if (bv < -0.40) {
+            bv = -0.40;
+        }
+        if (bv > 2.00) {
+            bv = 2.00;
+        }
+        long k = Math.round(bv*STEPS) - FIRST_STEP;
+        if (k >= 0 && k < TABLE.length && step((int) k) == bv)
+        {
+            return TABLE[(int) k];
+        }
+        return compute(bv);
+    }
+
+    // the color index of step k of the table, rounded just as parsing it
+    // from the catalog would be
+    private static double step(int k)
+    {
+        return (double) (k + FIRST_STEP) / STEPS;
+    }
+
+    // Given a star's color index, return the visible color in RGB, packed as
+    // 0xRRGGBB.
+    // Some code adapted from https://stackoverflow.com/questions/21977786/star-b-v-color-index-to-apparent-rgb-color
+    public static int compute(double colorIndex)
+    {
+        double bv = colorIndex;
+        if (bv < -0.40) {
+            bv = -0.40;
+        }
+        if (bv > 2.00) {
+            bv = 2.00;
+        }
+
+        double r = 0.0;
+        double g = 0.0;
+        double b = 0.0;
+        double t; // temp variable
+
+        // red
+        if (bv < 0.00) {
+            t = (bv + 0.40) / (0.00 + 0.40);
+            r = 0.61 + (0.11 * t) + (0.1 * t * t);
+        } else if (0.00 <= bv && bv < 0.40 ) {
+            t = (bv - 0.00) / (0.40 - 0.00);
+            r = 0.83 + (0.17 * t);
+        } else if (0.40 <= bv) {
+            t = (bv - 0.40) / (2.10 - 0.40);
+            r = 1.00;
+        }
+
+        // green
+        if (bv < 0.00) {
+            t = (bv + 0.40) / (0.00 + 0.40);
+            g = 0.70 + (0.07 * t) + (0.1 * t * t);
+        } else if (0.00 <= bv && bv < 0.40) {
+            t = (bv - 0.00) / (0.40 - 0.00);
+            g = 0.87 + (0.11 * t);
+        } else if (0.40 <= bv && bv < 1.60) {
+            t = (bv - 0.40) / (1.60 - 0.40);
+            g = 0.98 - (0.16 * t);
+        } else if (1.60 <= bv) {
+            t = (bv - 1.60) / (2.00 - 1.60);
+            g = 0.82 - (0.5 * t * t);
+        }
+
+        // blue
+        if (bv < 0.40) {
+            t = (bv + 0.40) / (0.40 + 0.40);
+            b = 1.00;
+        } else if (0.40 <= bv && bv < 1.50) {
+            t = (bv - 0.40) / (1.50 - 0.40);
+            b = 1.00 - (0.47 * t) + (0.1 * t * t);
+        } else if (1.50 <=  bv) {
+            t = (bv - 1.50) / (1.94 - 1.50);
+            b = 0.63 - (0.6 * t * t);
+        }
+
+        // prevent some issues with the lower bound.
+        r = Math.max(r, 0.0);
+        g = Math.max(g, 0.0);
+        b = Math.max(b, 0.0);
+
+
+        int red = (int)(255.0*r);
+        int green = (int)(255.0*g);
+        int blue = (int)(255.0*b);
+        return (red << 16) | (green << 8) | blue;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+* StarFilter
+* Compilation: javac StarFilter.java
+*
+* Decides, before readHYGData loads a HYG catalog CSV, which of its stars can
+* make a difference to the output, so the rest are never kept, sorted or
+* combined. Most of the catalog is far fainter than the magnitude limit, but
+* a faint star can still matter: it adds to the magnitude of a close bright
+* star, several faint stars can combine into one bright enough to print, and
+* whether a star is combined into an earlier one decides whether it absorbs
+* the stars after it.
+*
+* So the filter works on groups of stars rather than single stars. A first
+* pass over the file puts every star into cells laid out as in StarGrid and
+* adds up the light (10^(-0.4 magnitude)) in each cell. Neighbouring cells
+* that both hold stars are joined into groups, and since stars close enough
+* to combine are always in the same or neighbouring cells, a chain of stars
+* combining with each other never leaves its group. A group is kept whole if
+* any of its cells, together with the cells around it, holds enough light to
+* reach the magnitude limit, and is dropped whole otherwise. Every star that
+* is printed, and every star that could change one, is therefore kept, and
+* the output is the same as without the filter.
+*
+* Stars with no position are never close to another star, and are always
+* kept.
+*/
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public final class StarFilter
+{
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    // extra magnitude allowed on top of the limit, so that rounding in the
+    // sums of light can't drop a group that just reaches it
+    private static final double MARGIN = 0.01;
+
+    private final boolean normalized;
+    private final StarGrid.Cells cells;
+
+    // open-addressed table of the cells holding stars, with the light in each
+    private long[] cellKeys = new long[1 << 10];
+    private double[] cellLight = new double[1 << 10];
+    private int numCells = 0;
+
+    // whether the stars in each cell of the table are kept
+    private boolean[] kept;
+
+    private StarFilter(boolean normalized, double closeDistance)
+    {
+        this.normalized = normalized;
+        this.cells = new StarGrid.Cells(closeDistance, closeDistance);
+        Arrays.fill(cellKeys, EMPTY);
+    }
+
+    // read through a catalog and find which stars to keep when printing stars
+    // of at most magnitudeLimit (the normalized magnitude, from the distance,
+    // if normalized is true), where stars closer than closeDistance are
+    // combined. Returns null, keeping every star, if stars are spread over
+    // more than maxCells cells, since the filter would then take about as much
+    // memory as the stars themselves.
+    public static StarFilter build(File file, boolean normalized, double magnitudeLimit,
+                                   double closeDistance, int maxCells) throws IOException
+    {
+        StarFilter filter = new StarFilter(normalized, closeDistance);
+        try (HYGCsv csv = HYGCsv.open(file))
+        {
+            while (csv.next())
+            {
+                double ra = csv.getRA();
+                double dec = csv.getDec();
+                if (Double.isNaN(ra) || Double.isNaN(dec))
+                {
+                    continue;
+                }
+                int slot = filter.slot(filter.cells.key(ra, dec), true);
+                double light = Math.pow(10, -0.4*filter.magnitude(csv));
+                // a star with no magnitude never makes a combined star bright
+                // enough, though it is still part of its group
+                if (light == light)
+                {
+                    filter.cellLight[slot] += light;
+                }
+                if (filter.numCells > maxCells)
+                {
+                    return null;
+                }
+            }
+        }
+        filter.findKept(Math.pow(10, -0.4*(magnitudeLimit + MARGIN)));
+        return filter;
+    }
+
+    // true if the current row of a catalog should be kept
+    public boolean keep(HYGCsv row)
+    {
+        double ra = row.getRA();
+        double dec = row.getDec();
+        if (Double.isNaN(ra) || Double.isNaN(dec))
+        {
+            return true;
+        }
+        int slot = slot(cells.key(ra, dec), false);
+        // a cell missing from the first pass means the file has changed, so
+        // keep the star to be safe
+        return slot < 0 || kept[slot];
+    }
+
+    private double magnitude(HYGCsv row)
+    {
+        if (normalized)
+        {
+            return StarCatalog.normMag(row.getDistance());
+        }
+        return row.getMag();
+    }
+
+    // join the cells into groups and mark the cells of groups with enough
+    // light somewhere in them
+    private void findKept(double minLight)
+    {
+        int capacity = cellKeys.length;
+        int[] parent = new int[capacity];
+        boolean[] bright = new boolean[capacity];
+        for (int s = 0; s < capacity; s++)
+        {
+            parent[s] = s;
+        }
+
+        long[] around = new long[StarGrid.Cells.MAX_AROUND];
+        for (int s = 0; s < capacity; s++)
+        {
+            if (cellKeys[s] == EMPTY)
+            {
+                continue;
+            }
+            double light = 0;
+            int numAround = cells.around(cellKeys[s], around);
+            for (int c = 0; c < numAround; c++)
+            {
+                int t = slot(around[c], false);
+                if (t >= 0)
+                {
+                    light += cellLight[t];
+                    union(parent, s, t);
+                }
+            }
+            bright[s] = light >= minLight;
+        }
+
+        boolean[] brightGroup = new boolean[capacity];
+        for (int s = 0; s < capacity; s++)
+        {
+            if (bright[s])
+            {
+                brightGroup[find(parent, s)] = true;
+            }
+        }
+        kept = new boolean[capacity];
+        for (int s = 0; s < capacity; s++)
+        {
+            kept[s] = cellKeys[s] != EMPTY && brightGroup[find(parent, s)];
+        }
+    }
+
+    private static int find(int[] parent, int s)
+    {
+        while (parent[s] != s)
+        {
+            parent[s] = parent[parent[s]];
+            s = parent[s];
+        }
+        return s;
+    }
+
+    private static void union(int[] parent, int s, int t)
+    {
+        int a = find(parent, s);
+        int b = find(parent, t);
+        if (a != b)
+        {
+            parent[Math.max(a, b)] = Math.min(a, b);
+        }
+    }
+
+    // the slot of the table holding key, or (if add is false) -1 when the key
+    // is not in the table. When add is true, a missing key is added.
+    private int slot(long key, boolean add)
+    {
+        int mask = cellKeys.length - 1;
+        long h = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while (cellKeys[slot] != EMPTY && cellKeys[slot] != key)
+        {
+            slot = (slot + 1) & mask;
+        }
+        if (cellKeys[slot] == EMPTY)
+        {
+            if (!add)
+            {
+                return -1;
+            }
+            if (2*(numCells + 1) > cellKeys.length)
+            {
+                grow();
+                return slot(key, true);
+            }
+            cellKeys[slot] = key;
+            numCells++;
+        }
+        return slot;
+    }
+
+    private void grow()
+    {
+        long[] oldKeys = cellKeys;
+        double[] oldLight = cellLight;
+        cellKeys = new long[2*oldKeys.length];
+        cellLight = new double[2*oldKeys.length];
+        Arrays.fill(cellKeys, EMPTY);
+        numCells = 0;
+        for (int s = 0; s < oldKeys.length; s++)
+        {
+            if (oldKeys[s] != EMPTY)
+            {
+                cellLight[slot(oldKeys[s], true)] = oldLight[s];
+            }
+        }
+    }
+}
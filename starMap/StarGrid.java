@@ -0,0 +1,205 @@
+/*
+* StarGrid
+* Compilation: javac StarGrid.java
+*
+* A spatial hash of the stars of a StarCatalog, for readHYGData to find the
+* stars close to a given star without scanning the catalog. The sky is split
+* into cells of right ascension and declination, and each star is listed in
+* the cell it falls in; the stars close to a star are then among those in its
+* cell and the eight cells around it. Cells that wrap around 24h of right
+* ascension are neighbours, so stars on either side of 0h are found too.
+*
+* Building the grid and each lookup take time proportional to the number of
+* stars involved, so finding the neighbours of every star is linear overall
+* unless a great many stars share a few cells.
+*
+* A StarGrid keeps the results of its last lookup, so it is not thread-safe;
+* each thread should search its own copy(), which shares the cells.
+*/
+
+import java.util.Arrays;
+
+public final class StarGrid
+{
+    private static final double HOURS = 24.0;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final StarCatalog catalog;
+    private final Cells cells;
+
+    // open-addressed table from cell key to the first star in that cell
+    private final long[] cellKeys;
+    private final int[] cellFirst;
+    // the next star in the same cell, in increasing order, or -1
+    private final int[] nextInCell;
+
+    // the stars found by the last call to findNear, and the cells it looked in
+    private int[] near = new int[64];
+    private int numNear = 0;
+    private final long[] around = new long[Cells.MAX_AROUND];
+
+    // hash the stars of the catalog (which must have the RA and DEC columns)
+    // into cells at least raDistance hours by decDistance degrees, so that
+    // any two stars closer than that are in the same or neighbouring cells
+    public StarGrid(StarCatalog catalog, double raDistance, double decDistance)
+    {
+        this.catalog = catalog;
+        this.cells = new Cells(raDistance, decDistance);
+
+        int n = catalog.size();
+        int capacity = Integer.highestOneBit(Math.max(2*n, 2)) * 2;
+        cellKeys = new long[capacity];
+        Arrays.fill(cellKeys, EMPTY);
+        cellFirst = new int[capacity];
+        nextInCell = new int[n];
+
+        // add the stars from last to first so each cell lists its stars in
+        // increasing order
+        for (int i = n - 1; i >= 0; i--)
+        {
+            long key = cells.key(catalog.getRA(i), catalog.getDec(i));
+            int slot = slot(key, true);
+            nextInCell[i] = (cellKeys[slot] == EMPTY) ? -1 : cellFirst[slot];
+            cellFirst[slot] = i;
+            cellKeys[slot] = key;
+        }
+    }
+
+    // a grid with the same cells as other (which are shared, not copied) but
+    // its own lookup results
+    private StarGrid(StarGrid other)
+    {
+        this.catalog = other.catalog;
+        this.cells = other.cells;
+        this.cellKeys = other.cellKeys;
+        this.cellFirst = other.cellFirst;
+        this.nextInCell = other.nextInCell;
+    }
+
+    // a grid over the same stars that can be searched at the same time as
+    // this one, from another thread
+    public StarGrid copy()
+    {
+        return new StarGrid(this);
+    }
+
+    // find the stars in the cell of star i and the cells around it (including
+    // star i itself), returning how many there are. They are then available,
+    // in increasing order, from getNear.
+    public int findNear(int i)
+    {
+        numNear = 0;
+        int numCells = cells.around(cells.key(catalog.getRA(i), catalog.getDec(i)), around);
+        for (int c = 0; c < numCells; c++)
+        {
+            int slot = slot(around[c], false);
+            if (slot < 0)
+            {
+                continue;
+            }
+            for (int j = cellFirst[slot]; j >= 0; j = nextInCell[j])
+            {
+                if (numNear == near.length)
+                {
+                    near = Arrays.copyOf(near, 2*numNear);
+                }
+                near[numNear++] = j;
+            }
+        }
+        Arrays.sort(near, 0, numNear);
+        return numNear;
+    }
+
+    // the kth star found by the last call to findNear
+    public int getNear(int k)
+    {
+        return near[k];
+    }
+
+    // the slot of the table holding key, or (if add is false) -1 when the key
+    // is not in the table. When add is true, the slot the key should go in.
+    private int slot(long key, boolean add)
+    {
+        int mask = cellKeys.length - 1;
+        long h = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while (cellKeys[slot] != EMPTY && cellKeys[slot] != key)
+        {
+            slot = (slot + 1) & mask;
+        }
+        if (!add && cellKeys[slot] == EMPTY)
+        {
+            return -1;
+        }
+        return slot;
+    }
+
+    // how the sky is split into cells of right ascension and declination.
+    // Each cell has a key, and cells that wrap around 24h of right ascension
+    // are neighbours. StarFilter lays out its cells the same way.
+    public static final class Cells
+    {
+        // the most cells around() can return
+        public static final int MAX_AROUND = 9;
+
+        private final int raCells;
+        private final double raCellSize;
+        private final double decCellSize;
+
+        // cells at least raDistance hours by decDistance degrees, so that
+        // any two stars closer than that are in the same or neighbouring cells
+        public Cells(double raDistance, double decDistance)
+        {
+            // twice the distance, so that rounding at the edges of cells
+            // can't put close stars more than one cell apart
+            this.raCells = Math.max((int) Math.floor(HOURS / (2*raDistance)), 1);
+            this.raCellSize = HOURS / raCells;
+            this.decCellSize = 2*decDistance;
+        }
+
+        // the key of the cell a star is in. Stars with no position are all
+        // put in one cell.
+        public long key(double ra, double dec)
+        {
+            return decCell(dec) * raCells + raCell(ra);
+        }
+
+        // put the keys of the cell with the given key and the cells around
+        // it into keys, each once, returning how many there are
+        public int around(long key, long[] keys)
+        {
+            int raCell = (int) Math.floorMod(key, (long) raCells);
+            long decCell = Math.floorDiv(key, (long) raCells);
+            // with fewer than three cells around the sky, every cell is a
+            // neighbour, and each is visited once
+            int firstRA = (raCells < 3) ? 0 : raCell - 1;
+            int lastRA = (raCells < 3) ? raCells - 1 : raCell + 1;
+            int n = 0;
+            for (int c = firstRA; c <= lastRA; c++)
+            {
+                int r = Math.floorMod(c, raCells);
+                for (long dd = -1; dd <= 1; dd++)
+                {
+                    keys[n++] = (decCell + dd) * raCells + r;
+                }
+            }
+            return n;
+        }
+
+        private int raCell(double ra)
+        {
+            double cell = Math.floor(ra / raCellSize);
+            if (Double.isNaN(cell))
+            {
+                return 0;
+            }
+            return (int) Math.floorMod((long) cell, (long) raCells);
+        }
+
+        private long decCell(double dec)
+        {
+            double cell = Math.floor(dec / decCellSize);
+            return Double.isNaN(cell) ? 0 : (long) cell;
+        }
+    }
+}
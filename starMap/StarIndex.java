@@ -0,0 +1,418 @@
+/*
+* StarIndex
+* Compilation: javac StarIndex.java
+* Execution: java StarIndex CsvFile RA Dec RadiusDegrees
+*            java StarIndex CsvFile -polygon RA1 Dec1 RA2 Dec2 RA3 Dec3 [...]
+* Example: java StarIndex rawData/hygfull.csv 6.752 -16.716 5
+*
+* A spatial index of the stars of a StarCatalog for finding every star in a
+* region of the sky without scanning the catalog: a cone (all stars within
+* some angle of a point, such as within 5 degrees of Sirius) or a convex
+* polygon whose edges are great circles (such as one face of the gnomonic
+* cube). Right ascension is in hours and declination and angles in degrees,
+* as in the catalog.
+*
+* Each star is turned into a unit vector, and the vectors are put in a k-d
+* tree: the stars are split in half at the median along whichever of x, y and
+* z they are most spread out in, and each half is split again until at most
+* LEAF_SIZE stars are left. Every node of the tree keeps the box around its
+* stars, so a search skips whole nodes that are entirely outside the region
+* and takes whole nodes that are entirely inside it, and only tests single
+* stars near the edge of the region. There is no seam at 0h of right
+* ascension or at the poles.
+*
+* Stars with no position are not in the index. Like StarGrid, a StarIndex
+* keeps the results of its last search, so each thread should search its own
+* copy(), which shares the tree.
+*
+* Run on its own, it loads a catalog and prints the StarID, RA, Dec and Mag of
+* every star in a cone or polygon, in catalog order.
+*/
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+public final class StarIndex
+{
+    // nodes with at most this many stars are not split
+    private static final int LEAF_SIZE = 16;
+
+    private final StarCatalog catalog;
+    private final int size;
+
+    // the stars in the order of the tree, so the stars of each node are
+    // together, and the x, y and z of each of them
+    private final int[] stars;
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+
+    // the box around the stars of each node (min x, max x, min y, max y,
+    // min z, max z), with node 1 the root and the children of node k at 2k
+    // and 2k + 1
+    private final double[] boxes;
+
+    // the stars found by the last search
+    private int[] found = new int[64];
+    private int numFound = 0;
+
+    // index the stars of a catalog, which must have the RA and DEC columns
+    public StarIndex(StarCatalog catalog)
+    {
+        this.catalog = catalog;
+
+        int n = 0;
+        for (int i = 0; i < catalog.size(); i++)
+        {
+            if (hasPosition(catalog, i))
+            {
+                n++;
+            }
+        }
+        size = n;
+        stars = new int[n];
+        xs = new double[n];
+        ys = new double[n];
+        zs = new double[n];
+        n = 0;
+        for (int i = 0; i < catalog.size(); i++)
+        {
+            if (hasPosition(catalog, i))
+            {
+                stars[n] = i;
+                xs[n] = x(catalog.getRA(i), catalog.getDec(i));
+                ys[n] = y(catalog.getRA(i), catalog.getDec(i));
+                zs[n] = z(catalog.getDec(i));
+                n++;
+            }
+        }
+
+        // the depth of the tree, halving the largest node at each level
+        int depth = 0;
+        for (int largest = size; largest > LEAF_SIZE; largest = (largest + 1) / 2)
+        {
+            depth++;
+        }
+        boxes = new double[6 << (depth + 1)];
+        if (size > 0)
+        {
+            build(1, 0, size);
+        }
+    }
+
+    // an index sharing the tree of other but with its own search results
+    private StarIndex(StarIndex other)
+    {
+        this.catalog = other.catalog;
+        this.size = other.size;
+        this.stars = other.stars;
+        this.xs = other.xs;
+        this.ys = other.ys;
+        this.zs = other.zs;
+        this.boxes = other.boxes;
+    }
+
+    // an index over the same stars that can be searched at the same time as
+    // this one, from another thread
+    public StarIndex copy()
+    {
+        return new StarIndex(this);
+    }
+
+    // find the stars within radius degrees of the given point, returning
+    // how many there are. They are then available, in increasing order, from
+    // getFound.
+    public int findInCone(double ra, double dec, double radius)
+    {
+        numFound = 0;
+        if (size > 0 && radius >= 0)
+        {
+            double[] plane = {x(ra, dec), y(ra, dec), z(dec), Math.cos(Math.toRadians(Math.min(radius, 180)))};
+            search(1, 0, size, new double[][] {plane});
+        }
+        Arrays.sort(found, 0, numFound);
+        return numFound;
+    }
+
+    // find the stars inside the convex spherical polygon with the given
+    // corners, in order around it in either direction, and edges along great
+    // circles, returning how many there are. The polygon must be smaller than
+    // a hemisphere. The stars are then available, in increasing order, from
+    // getFound.
+    public int findInPolygon(double[] ras, double[] decs)
+    {
+        int corners = ras.length;
+        if (corners < 3 || decs.length != corners)
+        {
+            throw new IllegalArgumentException("A polygon needs at least three corners");
+        }
+        double[][] vertices = new double[corners][];
+        double[] center = new double[3];
+        for (int c = 0; c < corners; c++)
+        {
+            vertices[c] = new double[] {x(ras[c], decs[c]), y(ras[c], decs[c]), z(decs[c])};
+            for (int a = 0; a < 3; a++)
+            {
+                center[a] += vertices[c][a];
+            }
+        }
+
+        // each edge keeps the stars on the same side of its great circle as
+        // the middle of the polygon
+        double[][] planes = new double[corners][];
+        for (int c = 0; c < corners; c++)
+        {
+            double[] p = vertices[c];
+            double[] q = vertices[(c + 1) % corners];
+            double[] normal = {p[1]*q[2] - p[2]*q[1], p[2]*q[0] - p[0]*q[2], p[0]*q[1] - p[1]*q[0]};
+            if (normal[0]*center[0] + normal[1]*center[1] + normal[2]*center[2] < 0)
+            {
+                for (int a = 0; a < 3; a++)
+                {
+                    normal[a] = -normal[a];
+                }
+            }
+            planes[c] = new double[] {normal[0], normal[1], normal[2], 0};
+        }
+
+        numFound = 0;
+        if (size > 0)
+        {
+            search(1, 0, size, planes);
+        }
+        Arrays.sort(found, 0, numFound);
+        return numFound;
+    }
+
+    // the kth star found by the last search, as its index in the catalog
+    public int getFound(int k)
+    {
+        return found[k];
+    }
+
+    // split the stars from lo to hi (exclusive) into the subtree of the given
+    // node
+    private void build(int node, int lo, int hi)
+    {
+        double[] box = new double[6];
+        box[0] = box[2] = box[4] = Double.POSITIVE_INFINITY;
+        box[1] = box[3] = box[5] = Double.NEGATIVE_INFINITY;
+        for (int i = lo; i < hi; i++)
+        {
+            box[0] = Math.min(box[0], xs[i]);
+            box[1] = Math.max(box[1], xs[i]);
+            box[2] = Math.min(box[2], ys[i]);
+            box[3] = Math.max(box[3], ys[i]);
+            box[4] = Math.min(box[4], zs[i]);
+            box[5] = Math.max(box[5], zs[i]);
+        }
+        System.arraycopy(box, 0, boxes, 6*node, 6);
+        if (hi - lo <= LEAF_SIZE)
+        {
+            return;
+        }
+
+        double[] axis = xs;
+        if (box[3] - box[2] > box[1] - box[0])
+        {
+            axis = ys;
+        }
+        if (box[5] - box[4] > Math.max(box[1] - box[0], box[3] - box[2]))
+        {
+            axis = zs;
+        }
+        int middle = (lo + hi) >>> 1;
+        select(axis, lo, hi, middle);
+        build(2*node, lo, middle);
+        build(2*node + 1, middle, hi);
+    }
+
+    // reorder the stars from lo to hi (exclusive) so that star k is where it
+    // would be if they were sorted by the given axis, with none after it
+    // smaller and none before it larger
+    private void select(double[] axis, int lo, int hi, int k)
+    {
+        hi--;
+        while (lo < hi)
+        {
+            double pivot = axis[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j)
+            {
+                while (axis[i] < pivot) i++;
+                while (axis[j] > pivot) j--;
+                if (i <= j)
+                {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j)
+            {
+                hi = j;
+            }
+            else if (k >= i)
+            {
+                lo = i;
+            }
+            else
+            {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j)
+    {
+        int s = stars[i];
+        stars[i] = stars[j];
+        stars[j] = s;
+        double t = xs[i];
+        xs[i] = xs[j];
+        xs[j] = t;
+        t = ys[i];
+        ys[i] = ys[j];
+        ys[j] = t;
+        t = zs[i];
+        zs[i] = zs[j];
+        zs[j] = t;
+    }
+
+    // add the stars of the subtree of the given node (holding the stars from
+    // lo to hi) that are inside every plane. A star (x, y, z) is inside the
+    // plane (a, b, c, d) if ax + by + cz >= d.
+    private void search(int node, int lo, int hi, double[][] planes)
+    {
+        boolean inside = true;
+        int offset = 6*node;
+        for (double[] plane : planes)
+        {
+            double min = 0;
+            double max = 0;
+            for (int a = 0; a < 3; a++)
+            {
+                double low = plane[a]*boxes[offset + 2*a];
+                double high = plane[a]*boxes[offset + 2*a + 1];
+                min += Math.min(low, high);
+                max += Math.max(low, high);
+            }
+            if (max < plane[3])
+            {
+                return;
+            }
+            if (min < plane[3])
+            {
+                inside = false;
+            }
+        }
+
+        if (inside)
+        {
+            for (int i = lo; i < hi; i++)
+            {
+                add(stars[i]);
+            }
+        }
+        else if (hi - lo <= LEAF_SIZE)
+        {
+            for (int i = lo; i < hi; i++)
+            {
+                if (isInside(i, planes))
+                {
+                    add(stars[i]);
+                }
+            }
+        }
+        else
+        {
+            int middle = (lo + hi) >>> 1;
+            search(2*node, lo, middle, planes);
+            search(2*node + 1, middle, hi, planes);
+        }
+    }
+
+    private boolean isInside(int i, double[][] planes)
+    {
+        for (double[] plane : planes)
+        {
+            if (plane[0]*xs[i] + plane[1]*ys[i] + plane[2]*zs[i] < plane[3])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(int star)
+    {
+        if (numFound == found.length)
+        {
+            found = Arrays.copyOf(found, 2*numFound);
+        }
+        found[numFound++] = star;
+    }
+
+    private static boolean hasPosition(StarCatalog catalog, int i)
+    {
+        double ra = catalog.getRA(i);
+        double dec = catalog.getDec(i);
+        return !Double.isNaN(ra) && !Double.isNaN(dec)
+               && !Double.isInfinite(ra) && !Double.isInfinite(dec);
+    }
+
+    // the unit vector of a point, with ra in hours and dec in degrees
+    private static double x(double ra, double dec)
+    {
+        return Math.cos(Math.toRadians(dec))*Math.cos(Math.toRadians(15*ra));
+    }
+
+    private static double y(double ra, double dec)
+    {
+        return Math.cos(Math.toRadians(dec))*Math.sin(Math.toRadians(15*ra));
+    }
+
+    private static double z(double dec)
+    {
+        return Math.sin(Math.toRadians(dec));
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        StarCatalog catalog = StarCatalog.load(new File(args[0]),
+                                               StarCatalog.IDS + StarCatalog.RA
+                                               + StarCatalog.DEC + StarCatalog.MAG);
+        StarIndex index = new StarIndex(catalog);
+
+        long start = System.nanoTime();
+        int numFound;
+        if (args[1].equals("-polygon"))
+        {
+            int corners = (args.length - 2) / 2;
+            double[] ras = new double[corners];
+            double[] decs = new double[corners];
+            for (int c = 0; c < corners; c++)
+            {
+                ras[c] = Double.parseDouble(args[2 + 2*c]);
+                decs[c] = Double.parseDouble(args[3 + 2*c]);
+            }
+            numFound = index.findInPolygon(ras, decs);
+        }
+        else
+        {
+            numFound = index.findInCone(Double.parseDouble(args[1]), Double.parseDouble(args[2]),
+                                        Double.parseDouble(args[3]));
+        }
+        long elapsed = System.nanoTime() - start;
+
+        for (int k = 0; k < numFound; k++)
+        {
+            int i = index.getFound(k);
+            System.out.println(catalog.getStarID(i) + " " + catalog.getRA(i) + " "
+                               + catalog.getDec(i) + " " + catalog.getMag(i));
+        }
+        System.err.println("Found " + numFound + " stars in " + (elapsed / 1000) + " microseconds");
+    }
+}
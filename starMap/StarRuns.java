@@ -0,0 +1,313 @@
+/*
+* StarRuns
+* Compilation: javac StarRuns.java
+*
+* Sorts a HYG catalog CSV that is too large to hold in memory by right
+* ascension, for readHYGData. The catalog is read in pieces of a fixed number
+* of stars, and each piece is sorted in memory and written to a temporary file
+* as a sorted run. The runs are then merged as they are read back, giving every
+* star in right ascension order while only one star per run is in memory.
+* At most MAX_MERGE runs are merged at once, so that the open files and their
+* buffers stay within bounds however many runs there are: while there are
+* more, each group of MAX_MERGE runs is first merged into a single longer run.
+* Stars with the same right ascension stay in the order they were read, just
+* as StarCatalog.sortByRA would leave them.
+*
+* The stars at the very end of the order (from a given right ascension up to
+* 24h) are also kept in memory, as SortedStars requires.
+*
+* The temporary files are deleted by close().
+*/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class StarRuns implements SortedStars
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+    // the most runs read at the same time
+    private static final int MAX_MERGE = 64;
+
+    private final List<File> files = new ArrayList<File>();
+    private final StarCatalog tail;
+    private long size = 0;
+    private long numWithoutRA = 0;
+
+    // the next star of each run, as a catalog of one star (or none when the
+    // run is used up), and a heap of the runs ordered by their next star
+    private DataInputStream[] inputs;
+    private StarCatalog[] heads;
+    private int[] heap;
+    private int heapSize;
+
+    private StarRuns(int columns)
+    {
+        this.tail = new StarCatalog(columns);
+    }
+
+    // sort the stars of first followed by the rest of the stars in csv that
+    // the filter keeps (all of them if it is null), in runs of at most
+    // runSize stars. Stars with right ascension of at least tailFrom are also
+    // kept in memory (see getTail).
+    public static StarRuns create(StarCatalog first, HYGCsv csv, StarFilter filter,
+                                  int runSize, double tailFrom)
+        throws IOException
+    {
+        int columns = first.getColumns();
+        StarRuns runs = new StarRuns(columns);
+        try
+        {
+            StarCatalog piece = first;
+            while (piece.size() > 0)
+            {
+                runs.addRun(piece, tailFrom);
+                piece = StarCatalog.read(csv, columns, runSize, filter);
+            }
+            runs.tail.sortByRA();
+            while (runs.files.size() > MAX_MERGE)
+            {
+                runs.mergePass(columns);
+            }
+            runs.openRuns(runs.files, columns);
+        } catch (IOException e)
+        {
+            runs.close();
+            throw e;
+        }
+        return runs;
+    }
+
+    // sort a piece of the catalog and write it out as a run
+    private void addRun(StarCatalog piece, double tailFrom) throws IOException
+    {
+        piece.sortByRA();
+        File file = File.createTempFile("stars", ".run");
+        file.deleteOnExit();
+        files.add(file);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)))
+        {
+            for (int i = 0; i < piece.size(); i++)
+            {
+                piece.writeStar(out, i);
+                double ra = piece.getRA(i);
+                if (ra != ra)
+                {
+                    numWithoutRA++;
+                }
+                else if (ra >= tailFrom)
+                {
+                    tail.add(piece, i);
+                }
+            }
+        }
+        size += piece.size();
+    }
+
+    // merge each group of MAX_MERGE runs into one, in order, so that ties
+    // still go to the stars from earlier in the file
+    private void mergePass(int columns) throws IOException
+    {
+        List<File> merged = new ArrayList<File>();
+        StarCatalog star = new StarCatalog(columns);
+        for (int first = 0; first < files.size(); first += MAX_MERGE)
+        {
+            List<File> group = files.subList(first, Math.min(first + MAX_MERGE, files.size()));
+            File file = File.createTempFile("stars", ".run");
+            file.deleteOnExit();
+            merged.add(file);
+            openRuns(group, columns);
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)))
+            {
+                while (hasNext())
+                {
+                    star.truncate(0);
+                    next(star);
+                    star.writeStar(out, 0);
+                }
+            } finally
+            {
+                closeRuns();
+            }
+            for (File run : group)
+            {
+                run.delete();
+            }
+        }
+        files.clear();
+        files.addAll(merged);
+    }
+
+    private void openRuns(List<File> runFiles, int columns) throws IOException
+    {
+        int numRuns = runFiles.size();
+        inputs = new DataInputStream[numRuns];
+        heads = new StarCatalog[numRuns];
+        heap = new int[numRuns];
+        heapSize = 0;
+        for (int r = 0; r < numRuns; r++)
+        {
+            inputs[r] = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(runFiles.get(r)), BUFFER_SIZE));
+            heads[r] = new StarCatalog(columns);
+            if (readHead(r))
+            {
+                heap[heapSize] = r;
+                siftUp(heapSize);
+                heapSize++;
+            }
+        }
+    }
+
+    // the number of stars in all of the runs
+    public long size()
+    {
+        return size;
+    }
+
+    // the stars with right ascension of at least tailFrom, in order. These
+    // are the last stars in the order apart from any with no right
+    // ascension, starting at position getTailStart().
+    public StarCatalog getTail()
+    {
+        return tail;
+    }
+
+    public long getTailStart()
+    {
+        return size - numWithoutRA - tail.size();
+    }
+
+    public boolean hasNext()
+    {
+        return heapSize > 0;
+    }
+
+    // the right ascension of the next star
+    public double peekRA()
+    {
+        return heads[heap[0]].getRA(0);
+    }
+
+    // add the next star in right ascension order to the end of a catalog
+    public void next(StarCatalog into) throws IOException
+    {
+        int r = heap[0];
+        into.add(heads[r], 0);
+        if (readHead(r))
+        {
+            siftDown(0);
+        }
+        else
+        {
+            heapSize--;
+            heap[0] = heap[heapSize];
+            siftDown(0);
+        }
+    }
+
+    // delete the temporary files
+    public void close() throws IOException
+    {
+        closeRuns();
+        for (File file : files)
+        {
+            file.delete();
+        }
+    }
+
+    // close the runs being merged
+    private void closeRuns() throws IOException
+    {
+        if (inputs != null)
+        {
+            for (DataInputStream in : inputs)
+            {
+                if (in != null)
+                {
+                    in.close();
+                }
+            }
+            inputs = null;
+        }
+    }
+
+    // read the next star of run r, returning false if there are no more
+    private boolean readHead(int r) throws IOException
+    {
+        heads[r].truncate(0);
+        try
+        {
+            heads[r].readStar(inputs[r]);
+            return true;
+        } catch (EOFException e)
+        {
+            heads[r].truncate(0);
+            return false;
+        }
+    }
+
+    // true if the next star of run a comes before that of run b; ties go to
+    // the earlier run, which holds stars from earlier in the file
+    private boolean before(int a, int b)
+    {
+        double raA = heads[a].getRA(0);
+        double raB = heads[b].getRA(0);
+        if (StarCatalog.raBefore(raA, raB)) return true;
+        if (StarCatalog.raBefore(raB, raA)) return false;
+        return a < b;
+    }
+
+    private void siftUp(int k)
+    {
+        while (k > 0)
+        {
+            int parent = (k - 1) / 2;
+            if (!before(heap[k], heap[parent]))
+            {
+                break;
+            }
+            swap(k, parent);
+            k = parent;
+        }
+    }
+
+    private void siftDown(int k)
+    {
+        while (true)
+        {
+            int child = 2*k + 1;
+            if (child >= heapSize)
+            {
+                break;
+            }
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child]))
+            {
+                child++;
+            }
+            if (!before(heap[child], heap[k]))
+            {
+                break;
+            }
+            swap(k, child);
+            k = child;
+        }
+    }
+
+    private void swap(int i, int j)
+    {
+        int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+* StarSprites
+* Compilation: javac StarSprites.java
+*
+* Draws stars as antialiased discs directly into the packed pixels of an image
+* (0xAARRGGBB, row by row), as a much faster stand-in for filling an
+* antialiased Ellipse2D for every star. The diameter of a star is rounded to
+* a quarter of a pixel and the position of its center within a pixel to a
+* quarter of a pixel in each direction, and for each combination a sprite
+* holding how much of every pixel the disc covers is filled with Java2D the
+* first time it is needed. Drawing a star then only blends the star color into
+* the pixels under its sprite. Discs with a diameter of at most one pixel are drawn as a
+* single solid pixel, as StdDraw.point does.
+*
+* Positions are in pixels, with pixel (i, j) covering the square from (i, j)
+* to (i+1, j+1), so a disc centered at (i, j) is centered on the corner of
+* four pixels, just as in Java2D.
+*
+* The sprites are shared by every draw call of one StarSprites, which is not
+* thread-safe; use one per thread.
+*/
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+
+public final class StarSprites
+{
+    // steps per pixel that diameters and center positions are rounded to
+    private static final int STEPS = 4;
+
+    // sprites[diameter*STEPS][phaseY*(STEPS+1) + phaseX], made when first used
+    private Sprite[][] sprites = new Sprite[64*STEPS][];
+
+    // how much of each pixel in a box around one disc it covers, 0 to 255
+    private static final class Sprite
+    {
+        final int left;
+        final int top;
+        final int width;
+        final int height;
+        final byte[] coverage;
+
+        Sprite(int left, int top, int width, int height, byte[] coverage)
+        {
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+            this.coverage = coverage;
+        }
+    }
+
+    // draw the first n stars, in order, into the pixels of an image of size
+    // width by height. Star i is centered at (xs[i], ys[i]) with diameter
+    // diameters[i] and color rgb[i] (0xRRGGBB). Parts of stars off the image
+    // are left out.
+    public void draw(int[] pixels, int width, int height, double[] xs, double[] ys,
+                     int[] rgb, double[] diameters, int n)
+    {
+        for (int i = 0; i < n; i++)
+        {
+            draw(pixels, width, height, xs[i], ys[i], diameters[i], rgb[i]);
+        }
+    }
+
+    // draw one star centered at (x, y) with the given diameter and color
+    // (0xRRGGBB) into the pixels of an image of size width by height
+    public void draw(int[] pixels, int width, int height, double x, double y,
+                     double diameter, int rgb)
+    {
+        if (diameter <= 1)
+        {
+            int px = (int) Math.round(x);
+            int py = (int) Math.round(y);
+            if (px >= 0 && px < width && py >= 0 && py < height)
+            {
+                pixels[py*width + px] = 0xFF000000 | rgb;
+            }
+            return;
+        }
+
+        // split the center into a whole pixel and a rounded offset within it
+        double floorX = Math.floor(x);
+        double floorY = Math.floor(y);
+        int phaseX = (int) Math.round((x - floorX)*STEPS);
+        int phaseY = (int) Math.round((y - floorY)*STEPS);
+        Sprite sprite = getSprite((int) Math.round(diameter*STEPS), phaseX, phaseY);
+
+        int left = (int) floorX + sprite.left;
+        int top = (int) floorY + sprite.top;
+        int firstColumn = Math.max(left, 0);
+        int lastColumn = Math.min(left + sprite.width, width);
+        int firstRow = Math.max(top, 0);
+        int lastRow = Math.min(top + sprite.height, height);
+        for (int row = firstRow; row < lastRow; row++)
+        {
+            int offset = row*width;
+            int spriteOffset = (row - top)*sprite.width - left;
+            for (int column = firstColumn; column < lastColumn; column++)
+            {
+                int alpha = sprite.coverage[spriteOffset + column] & 0xFF;
+                if (alpha != 0)
+                {
+                    pixels[offset + column] = blend(pixels[offset + column], rgb, alpha);
+                }
+            }
+        }
+    }
+
+    // the sprite for a disc with diameter steps/STEPS pixels, centered
+    // (phaseX/STEPS, phaseY/STEPS) of a pixel from the corner of a pixel
+    private Sprite getSprite(int steps, int phaseX, int phaseY)
+    {
+        if (steps >= sprites.length)
+        {
+            Sprite[][] larger = new Sprite[Math.max(2*sprites.length, steps + 1)][];
+            System.arraycopy(sprites, 0, larger, 0, sprites.length);
+            sprites = larger;
+        }
+        if (sprites[steps] == null)
+        {
+            sprites[steps] = new Sprite[(STEPS + 1)*(STEPS + 1)];
+        }
+        int phase = phaseY*(STEPS + 1) + phaseX;
+        Sprite sprite = sprites[steps][phase];
+        if (sprite == null)
+        {
+            sprite = makeSprite((double) steps/STEPS, (double) phaseX/STEPS, (double) phaseY/STEPS);
+            sprites[steps][phase] = sprite;
+        }
+        return sprite;
+    }
+
+    // compute the coverage of a disc with the given diameter centered at
+    // (centerX, centerY), relative to the corner of the pixel it is in. The
+    // disc is filled once with the same antialiasing StdDraw uses, so the
+    // sprite matches what StdDraw.point would draw.
+    private static Sprite makeSprite(double diameter, double centerX, double centerY)
+    {
+        double radius = diameter/2;
+        int left = (int) Math.floor(centerX - radius) - 1;
+        int top = (int) Math.floor(centerY - radius) - 1;
+        int width = (int) Math.ceil(centerX + radius) + 1 - left;
+        int height = (int) Math.ceil(centerY + radius) + 1 - top;
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.setColor(Color.WHITE);
+        g.fill(new Ellipse2D.Double(centerX - left - radius, centerY - top - radius,
+                                    diameter, diameter));
+        g.dispose();
+
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        byte[] coverage = new byte[width*height];
+        for (int i = 0; i < pixels.length; i++)
+        {
+            coverage[i] = (byte) (pixels[i] >>> 24);
+        }
+        return new Sprite(left, top, width, height, coverage);
+    }
+
+    // blend the color rgb with coverage alpha (0 to 255) over the pixel dst,
+    // as Graphics2D does when filling an antialiased shape
+    private static int blend(int dst, int rgb, int alpha)
+    {
+        if (alpha == 255)
+        {
+            return 0xFF000000 | rgb;
+        }
+        int dstAlpha = dst >>> 24;
+        int rest = 255 - alpha;
+        if (dstAlpha == 255)
+        {
+            int red = mul8(alpha, (rgb >> 16) & 0xFF) + mul8(rest, (dst >> 16) & 0xFF);
+            int green = mul8(alpha, (rgb >> 8) & 0xFF) + mul8(rest, (dst >> 8) & 0xFF);
+            int blue = mul8(alpha, rgb & 0xFF) + mul8(rest, dst & 0xFF);
+            return 0xFF000000 | (red << 16) | (green << 8) | blue;
+        }
+        // the pixel below is not opaque, so weigh it by its own alpha
+        int dstWeight = dstAlpha*rest;
+        int outAlpha = alpha*255 + dstWeight;
+        int red = (((rgb >> 16) & 0xFF)*alpha*255 + ((dst >> 16) & 0xFF)*dstWeight + outAlpha/2)/outAlpha;
+        int green = (((rgb >> 8) & 0xFF)*alpha*255 + ((dst >> 8) & 0xFF)*dstWeight + outAlpha/2)/outAlpha;
+        int blue = ((rgb & 0xFF)*alpha*255 + (dst & 0xFF)*dstWeight + outAlpha/2)/outAlpha;
+        return (((outAlpha + 127)/255) << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    // a*b/255 rounded, computed the way Java2D's blending tables are
+    private static int mul8(int a, int b)
+    {
+        return (a*b*0x10101 + 0x800000) >>> 24;
+    }
+}
@@ -16,6 +16,12 @@
  *
  *  Remarks
  *  -------
+ *    -  only the region drawn on since the last update of the screen
+ *       (the dirty rectangle) is copied and repainted, so drawing many
+ *       small shapes no longer copies the whole canvas for each one
+ *    -  when there is no display, or when run with -Djava.awt.headless=true,
+ *       no window is created and drawing only goes to the offscreen image,
+ *       which is what save() writes
  *    -  don't use AffineTransform for rescaling since it inverts
  *       images and strings
  *    -  careful using setFont in inner loop within an animation -
@@ -123,8 +129,22 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
     // singleton for callbacks: avoids generation of extra .class files
     private static StdDraw std = new StdDraw();
 
-    // the frame for drawing to the screen
+    // the frame for drawing to the screen, and the label in it showing the
+    // onscreen image
     private static JFrame frame;
+    private static JLabel canvas;
+
+    // reused by points() so that drawing a point creates no objects
+    private static final Ellipse2D.Double pointShape = new Ellipse2D.Double();
+    private static final Color[] colorCache = new Color[1024];
+
+    // the region of the offscreen image drawn on since it was last copied to
+    // the onscreen image, in pixels (x1 and y1 exclusive); empty if x0 >= x1
+    private static int dirtyX0, dirtyY0, dirtyX1, dirtyY1;
+
+    // with no display there is no frame or onscreen image, and drawing
+    // only goes to the offscreen image
+    private static final boolean headless = GraphicsEnvironment.isHeadless();
 
     // mouse state
     private static boolean mousePressed = false;
@@ -171,11 +191,13 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
     // init
     private static void init() {
         if (frame != null) frame.setVisible(false);
-        frame = new JFrame();
         offscreenImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        onscreenImage  = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         offscreen = offscreenImage.createGraphics();
-        onscreen  = onscreenImage.createGraphics();
+        if (!headless) {
+            frame = new JFrame();
+            onscreenImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            onscreen      = onscreenImage.createGraphics();
+        }
         setXscale();
         setYscale();
         offscreen.setColor(DEFAULT_CLEAR_COLOR);
@@ -192,13 +214,14 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         offscreen.addRenderingHints(hints);
 
         // frame stuff
+        if (headless) return;
         ImageIcon icon = new ImageIcon(onscreenImage);
-        JLabel draw = new JLabel(icon);
+        canvas = new JLabel(icon);
 
-        draw.addMouseListener(std);
-        draw.addMouseMotionListener(std);
+        canvas.addMouseListener(std);
+        canvas.addMouseMotionListener(std);
 
-        frame.setContentPane(draw);
+        frame.setContentPane(canvas);
         frame.addKeyListener(std);    // JLabel cannot get keyboard focus
         frame.setResizable(false);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);            // closes all windows
@@ -300,6 +323,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         offscreen.setColor(color);
         offscreen.fillRect(0, 0, width, height);
         offscreen.setColor(penColor);
+        markDirty(0, 0, width, height);
         draw();
     }
 
@@ -390,7 +414,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
      * @param y1 the y-coordinate of the destination point
      */
     public static void line(double x0, double y0, double x1, double y1) {
-        offscreen.draw(new Line2D.Double(scaleX(x0), scaleY(y0), scaleX(x1), scaleY(y1)));
+        drawShape(new Line2D.Double(scaleX(x0), scaleY(y0), scaleX(x1), scaleY(y1)));
         draw();
     }
 
@@ -400,7 +424,10 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
      * @param y the y-coordinate of the pixel
      */
     private static void pixel(double x, double y) {
-        offscreen.fillRect((int) Math.round(scaleX(x)), (int) Math.round(scaleY(y)), 1, 1);
+        int xs = (int) Math.round(scaleX(x));
+        int ys = (int) Math.round(scaleY(y));
+        offscreen.fillRect(xs, ys, 1, 1);
+        markDirty(xs, ys, xs + 1, ys + 1);
     }
 
     /**
@@ -418,11 +445,103 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         // double hs = factorY(2*r);
         // if (ws <= 1 && hs <= 1) pixel(x, y);
         if (scaledPenRadius <= 1) pixel(x, y);
-        else offscreen.fill(new Ellipse2D.Double(xs - scaledPenRadius/2, ys - scaledPenRadius/2,
-                                                 scaledPenRadius, scaledPenRadius));
+        else fillShape(new Ellipse2D.Double(xs - scaledPenRadius/2, ys - scaledPenRadius/2,
+                                            scaledPenRadius, scaledPenRadius));
+        draw();
+    }
+
+    /**
+     * Draw the first n of the given points, each exactly as <tt>point()</tt>
+     * would with its own pen color and radius, and then display them all at
+     * once. No objects are created for each point, so this is much faster
+     * than setting the pen and calling <tt>point()</tt> for many points.
+     * The pen color and radius are left unchanged.
+     * @param x the x-coordinates of the points
+     * @param y the y-coordinates of the points
+     * @param rgb the colors of the points, packed as 0xRRGGBB
+     * @param r the pen radius of each point
+     * @param n the number of points to draw
+     * @throws IllegalArgumentException if any arrays are shorter than n
+     */
+    public static void points(double[] x, double[] y, int[] rgb, double[] r, int n) {
+        if (x.length < n || y.length < n || rgb.length < n || r.length < n)
+            throw new IllegalArgumentException("arrays must have at least " + n + " points");
+        int color = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || rgb[i] != color) {
+                color = rgb[i];
+                offscreen.setColor(cachedColor(color));
+            }
+            double xs = scaleX(x[i]);
+            double ys = scaleY(y[i]);
+            float scaledPenRadius = (float) (r[i] * DEFAULT_SIZE);
+            if (scaledPenRadius <= 1) {
+                int xp = (int) Math.round(xs);
+                int yp = (int) Math.round(ys);
+                offscreen.fillRect(xp, yp, 1, 1);
+                markDirty(xp, yp, xp + 1, yp + 1);
+            }
+            else {
+                pointShape.setFrame(xs - scaledPenRadius/2, ys - scaledPenRadius/2,
+                                    scaledPenRadius, scaledPenRadius);
+                offscreen.fill(pointShape);
+                markDirty((int) Math.floor(xs - scaledPenRadius/2) - 1,
+                          (int) Math.floor(ys - scaledPenRadius/2) - 1,
+                          (int) Math.ceil(xs + scaledPenRadius/2) + 1,
+                          (int) Math.ceil(ys + scaledPenRadius/2) + 1);
+            }
+        }
+        offscreen.setColor(penColor);
+        draw();
+    }
+
+    /**
+     * Draw the given points, as <tt>points(x, y, rgb, r, x.length)</tt>.
+     * @param x the x-coordinates of the points
+     * @param y the y-coordinates of the points
+     * @param rgb the colors of the points, packed as 0xRRGGBB
+     * @param r the pen radius of each point
+     */
+    public static void points(double[] x, double[] y, int[] rgb, double[] r) {
+        points(x, y, rgb, r, x.length);
+    }
+
+    /**
+     * Get the pixels of the drawing to draw on directly, packed as 0xAARRGGBB
+     * row by row, with one row per pixel of canvas height and one value per
+     * pixel of canvas width. Changes are not displayed until
+     * <tt>pixelsChanged()</tt> is called.
+     * @return the pixels of the offscreen image
+     */
+    public static int[] getPixels() {
+        return ((DataBufferInt) offscreenImage.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Display changes made through <tt>getPixels()</tt> to the pixels from
+     * (x0, y0) up to (but not including) (x1, y1).
+     * @param x0 the left column of the changed pixels
+     * @param y0 the top row of the changed pixels
+     * @param x1 one more than the right column of the changed pixels
+     * @param y1 one more than the bottom row of the changed pixels
+     */
+    public static void pixelsChanged(int x0, int y0, int x1, int y1) {
+        markDirty(x0, y0, x1, y1);
         draw();
     }
 
+    // the Color for a packed 0xRRGGBB value, from a small direct-mapped cache
+    // so that drawing many points of a few colors creates few objects
+    private static Color cachedColor(int rgb) {
+        int slot = (rgb ^ (rgb >>> 11) ^ (rgb >>> 19)) & (colorCache.length - 1);
+        Color color = colorCache[slot];
+        if (color == null || (color.getRGB() & 0xFFFFFF) != rgb) {
+            color = new Color(rgb);
+            colorCache[slot] = color;
+        }
+        return color;
+    }
+
     /**
      * Draw a circle of radius r, centered on (x, y).
      * @param x the x-coordinate of the center of the circle
@@ -437,7 +556,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         double ws = factorX(2*r);
         double hs = factorY(2*r);
         if (ws <= 1 && hs <= 1) pixel(x, y);
-        else offscreen.draw(new Ellipse2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else drawShape(new Ellipse2D.Double(xs - ws/2, ys - hs/2, ws, hs));
         draw();
     }
 
@@ -455,7 +574,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         double ws = factorX(2*r);
         double hs = factorY(2*r);
         if (ws <= 1 && hs <= 1) pixel(x, y);
-        else offscreen.fill(new Ellipse2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else fillShape(new Ellipse2D.Double(xs - ws/2, ys - hs/2, ws, hs));
         draw();
     }
 
@@ -476,7 +595,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         double ws = factorX(2*semiMajorAxis);
         double hs = factorY(2*semiMinorAxis);
         if (ws <= 1 && hs <= 1) pixel(x, y);
-        else offscreen.draw(new Ellipse2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else drawShape(new Ellipse2D.Double(xs - ws/2, ys - hs/2, ws, hs));
         draw();
     }
 
@@ -496,7 +615,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         double ws = factorX(2*semiMajorAxis);
         double hs = factorY(2*semiMinorAxis);
         if (ws <= 1 && hs <= 1) pixel(x, y);
-        else offscreen.fill(new Ellipse2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else fillShape(new Ellipse2D.Double(xs - ws/2, ys - hs/2, ws, hs));
         draw();
     }
 
@@ -519,7 +638,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         double ws = factorX(2*r);
         double hs = factorY(2*r);
         if (ws <= 1 && hs <= 1) pixel(x, y);
-        else offscreen.draw(new Arc2D.Double(xs - ws/2, ys - hs/2, ws, hs, angle1, angle2 - angle1, Arc2D.OPEN));
+        else drawShape(new Arc2D.Double(xs - ws/2, ys - hs/2, ws, hs, angle1, angle2 - angle1, Arc2D.OPEN));
         draw();
     }
 
@@ -537,7 +656,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         double ws = factorX(2*r);
         double hs = factorY(2*r);
         if (ws <= 1 && hs <= 1) pixel(x, y);
-        else offscreen.draw(new Rectangle2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else drawShape(new Rectangle2D.Double(xs - ws/2, ys - hs/2, ws, hs));
         draw();
     }
 
@@ -555,7 +674,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         double ws = factorX(2*r);
         double hs = factorY(2*r);
         if (ws <= 1 && hs <= 1) pixel(x, y);
-        else offscreen.fill(new Rectangle2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else fillShape(new Rectangle2D.Double(xs - ws/2, ys - hs/2, ws, hs));
         draw();
     }
 
@@ -576,7 +695,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         double ws = factorX(2*halfWidth);
         double hs = factorY(2*halfHeight);
         if (ws <= 1 && hs <= 1) pixel(x, y);
-        else offscreen.draw(new Rectangle2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else drawShape(new Rectangle2D.Double(xs - ws/2, ys - hs/2, ws, hs));
         draw();
     }
 
@@ -596,7 +715,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         double ws = factorX(2*halfWidth);
         double hs = factorY(2*halfHeight);
         if (ws <= 1 && hs <= 1) pixel(x, y);
-        else offscreen.fill(new Rectangle2D.Double(xs - ws/2, ys - hs/2, ws, hs));
+        else fillShape(new Rectangle2D.Double(xs - ws/2, ys - hs/2, ws, hs));
         draw();
     }
 
@@ -613,7 +732,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         for (int i = 0; i < N; i++)
             path.lineTo((float) scaleX(x[i]), (float) scaleY(y[i]));
         path.closePath();
-        offscreen.draw(path);
+        drawShape(path);
         draw();
     }
 
@@ -629,7 +748,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         for (int i = 0; i < N; i++)
             path.lineTo((float) scaleX(x[i]), (float) scaleY(y[i]));
         path.closePath();
-        offscreen.fill(path);
+        fillShape(path);
         draw();
     }
 
@@ -679,6 +798,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         if (ws < 0 || hs < 0) throw new IllegalArgumentException("image " + s + " is corrupt");
 
         offscreen.drawImage(image, (int) Math.round(xs - ws/2.0), (int) Math.round(ys - hs/2.0), null);
+        markDirty(new Rectangle2D.Double(Math.round(xs - ws/2.0), Math.round(ys - hs/2.0), ws, hs), 0);
         draw();
     }
 
@@ -701,6 +821,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
 
         offscreen.rotate(Math.toRadians(-degrees), xs, ys);
         offscreen.drawImage(image, (int) Math.round(xs - ws/2.0), (int) Math.round(ys - hs/2.0), null);
+        markDirty(new Rectangle2D.Double(Math.round(xs - ws/2.0), Math.round(ys - hs/2.0), ws, hs), 1);
         offscreen.rotate(Math.toRadians(+degrees), xs, ys);
 
         draw();
@@ -731,6 +852,8 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
                                        (int) Math.round(ys - hs/2.0),
                                        (int) Math.round(ws),
                                        (int) Math.round(hs), null);
+            markDirty(new Rectangle2D.Double(Math.round(xs - ws/2.0), Math.round(ys - hs/2.0),
+                                             Math.round(ws), Math.round(hs)), 0);
         }
         draw();
     }
@@ -761,6 +884,8 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
                                    (int) Math.round(ys - hs/2.0),
                                    (int) Math.round(ws),
                                    (int) Math.round(hs), null);
+        markDirty(new Rectangle2D.Double(Math.round(xs - ws/2.0), Math.round(ys - hs/2.0),
+                                         Math.round(ws), Math.round(hs)), 1);
         offscreen.rotate(Math.toRadians(+degrees), xs, ys);
 
         draw();
@@ -785,6 +910,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         int ws = metrics.stringWidth(s);
         int hs = metrics.getDescent();
         offscreen.drawString(s, (float) (xs - ws/2.0), (float) (ys + hs));
+        markTextDirty(metrics, s, xs - ws/2.0, ys + hs);
         draw();
     }
 
@@ -818,6 +944,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         double ys = scaleY(y);
         int hs = metrics.getDescent();
         offscreen.drawString(s, (float) (xs), (float) (ys + hs));
+        markTextDirty(metrics, s, xs, ys + hs);
         draw();
     }
 
@@ -835,6 +962,7 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         int ws = metrics.stringWidth(s);
         int hs = metrics.getDescent();
         offscreen.drawString(s, (float) (xs - ws), (float) (ys + hs));
+        markTextDirty(metrics, s, xs - ws, ys + hs);
         draw();
     }
 
@@ -871,11 +999,75 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
         draw();
     }
 
-    // draw onscreen if defer is false
+    /**
+     * Is there no window, so that drawing only goes to the offscreen image?
+     * This is the case when there is no display, or when the program is
+     * run with -Djava.awt.headless=true.
+     * @return true if there is no window, false otherwise
+     */
+    public static boolean isHeadless() { return headless; }
+
+    // draw onscreen if defer is false and there is a screen to draw on.
+    // Only the dirty rectangle is copied and repainted; while drawing is
+    // deferred it keeps growing, so show() copies everything drawn since.
     private static void draw() {
-        if (defer) return;
-        onscreen.drawImage(offscreenImage, 0, 0, null);
-        frame.repaint();
+        if (defer || headless) return;
+        int x0 = Math.max(dirtyX0, 0);
+        int y0 = Math.max(dirtyY0, 0);
+        int x1 = Math.min(dirtyX1, width);
+        int y1 = Math.min(dirtyY1, height);
+        dirtyX0 = dirtyY0 = dirtyX1 = dirtyY1 = 0;
+        if (x0 >= x1 || y0 >= y1) return;
+        onscreen.drawImage(offscreenImage, x0, y0, x1, y1, x0, y0, x1, y1, null);
+        // the first clear() in init() comes before the label is created
+        if (canvas != null) canvas.repaint(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    // outline or fill a shape on the offscreen image and mark it as dirty
+    private static void drawShape(Shape shape) {
+        offscreen.draw(shape);
+        markDirty(shape.getBounds2D(), ((BasicStroke) offscreen.getStroke()).getLineWidth() / 2 + 1);
+    }
+
+    private static void fillShape(Shape shape) {
+        offscreen.fill(shape);
+        markDirty(shape.getBounds2D(), 1);
+    }
+
+    // mark the bounds of text drawn with its baseline starting at (xs, ys)
+    private static void markTextDirty(FontMetrics metrics, String s, double xs, double ys) {
+        Rectangle2D bounds = metrics.getStringBounds(s, offscreen);
+        bounds.setRect(xs + bounds.getX(), ys + bounds.getY(), bounds.getWidth(), bounds.getHeight());
+        markDirty(bounds, 1);
+    }
+
+    // mark a rectangle drawn under the current transform (which is rotated
+    // while drawing rotated pictures and text), grown by pad pixels on every
+    // side to cover the pen and antialiasing
+    private static void markDirty(Rectangle2D bounds, double pad) {
+        AffineTransform transform = offscreen.getTransform();
+        if (!transform.isIdentity()) bounds = transform.createTransformedShape(bounds).getBounds2D();
+        int x0 = (int) Math.floor(bounds.getMinX() - pad);
+        int y0 = (int) Math.floor(bounds.getMinY() - pad);
+        int x1 = (int) Math.ceil(bounds.getMaxX() + pad);
+        int y1 = (int) Math.ceil(bounds.getMaxY() + pad);
+        markDirty(x0, y0, x1, y1);
+    }
+
+    // add the pixels from (x0, y0) up to (but not including) (x1, y1) to the
+    // dirty rectangle
+    private static void markDirty(int x0, int y0, int x1, int y1) {
+        if (dirtyX0 >= dirtyX1) {
+            dirtyX0 = x0;
+            dirtyY0 = y0;
+            dirtyX1 = x1;
+            dirtyY1 = y1;
+            return;
+        }
+        dirtyX0 = Math.min(dirtyX0, x0);
+        dirtyY0 = Math.min(dirtyY0, y0);
+        dirtyX1 = Math.max(dirtyX1, x1);
+        dirtyY1 = Math.max(dirtyY1, y1);
     }
 
 
@@ -885,25 +1077,27 @@ public final class StdDraw implements ActionListener, MouseListener, MouseMotion
 
     /**
      * Save onscreen image to file - suffix must be png, jpg, or gif.
+     * In headless mode the offscreen image is saved instead.
      * @param filename the name of the file with one of the required suffixes
      */
     public static void save(String filename) {
+        BufferedImage image = headless ? offscreenImage : onscreenImage;
         File file = new File(filename);
         String suffix = filename.substring(filename.lastIndexOf('.') + 1);
 
         // png files
         if (suffix.toLowerCase().equals("png")) {
-            try { ImageIO.write(onscreenImage, suffix, file); }
+            try { ImageIO.write(image, suffix, file); }
             catch (IOException e) { e.printStackTrace(); }
         }
 
         // need to change from ARGB to RGB for jpeg
         // reference: http://archives.java.sun.com/cgi-bin/wa?A2=ind0404&L=java2d-interest&D=0&P=2727
         else if (suffix.toLowerCase().equals("jpg")) {
-            WritableRaster raster = onscreenImage.getRaster();
+            WritableRaster raster = image.getRaster();
             WritableRaster newRaster;
             newRaster = raster.createWritableChild(0, 0, width, height, 0, 0, new int[] {0, 1, 2});
-            DirectColorModel cm = (DirectColorModel) onscreenImage.getColorModel();
+            DirectColorModel cm = (DirectColorModel) image.getColorModel();
             DirectColorModel newCM = new DirectColorModel(cm.getPixelSize(),
                                                           cm.getRedMask(),
                                                           cm.getGreenMask(),
@@ -4,10 +4,13 @@
 * Last Updated: 7/18/17
 *
 * Compilation: javac createMapStdDraw.java
-* Execution: java createMapStdDraw SourceFilename.png MapType OutputFilename.png NumInputs [Input Files]
+* Execution: java createMapStdDraw SourceFilename.png MapType OutputFilename.png [-headless] [-maxMag Magnitude] [-previews Magnitudes] [-observer Latitude Longitude Time [-timelapse NumFrames MinutesApart]] NumInputs [Input Files]
 * Example: java createMapStdDraw gnomonicBG.png 6 alternateGnomonic 1 brightestAlternateHYG.txt
 * Example: java createMapStdDraw blankBlack.png 5 trueSkyWithColor 1 brightestHYGWithColor.txt
-* Dependencies: StdDraw.java
+* Example: java createMapStdDraw blankBlack.png 5 trueSkyWithColor -headless 1 brightestHYGWithColor.txt
+* Example: java createMapStdDraw blankBlack.png 5 trueSkyWithColor -previews 3,4.5 1 brightestHYGWithColor.pts
+* Example: java createMapStdDraw blankBlack.png 5 princetonSky -observer 40.35 -74.66 2017-07-18T04:00:00Z -timelapse 96 5 1 brightestHYGWithColor.pts
+* Dependencies: StdDraw.java StarSprites.java SkyView.java
 *
 * Creates a map image with filename OutputFilename.png. The type of map created
 * is based on the integer input MapType, with the maps corresponding to each
@@ -15,7 +18,37 @@
 * line in the file has the longitute, latitude, and color of a point on the
 * earth, and this point is drawn onto the image specified by SourceFilename.png.
 * Points in earlier files are drawn first, so in the example above the parallels
-* are drawn on top of the world countries.
+* are drawn on top of the world countries. The stars from every file are
+* collected first and then stamped straight into the canvas with StarSprites,
+* which is much faster than drawing each one with StdDraw.
+*
+* Any input file may instead be a binary point file created with PointFile
+* (java PointFile pointData/brightestHYGWithColor.txt pointData/brightestHYGWithColor.pts),
+* which is detected automatically and memory-mapped rather than parsed.
+*
+* Only stars of magnitude up to 6.5 are drawn, or up to Magnitude with
+* -maxMag. Binary point files sorted by magnitude (made with PointFile
+* -byMagnitude) are only read up to that magnitude, so a map of just the
+* brightest stars is quick to draw even from a large catalog. With -previews
+* and a comma-separated list of lower magnitudes, a preview map with only the
+* stars up to each of them is saved first, brightest first, as
+* OutputFilename-mag3.png and so on.
+*
+* With -observer, the stars are drawn as they appear in the sky at the given
+* latitude and longitude (in degrees, north and east positive) at the given
+* UTC time (as in 2017-07-18T04:00:00Z), with the altitude in place of the
+* declination and the azimuth in place of the right ascension, and stars below
+* the horizon left out; with map type 5 the hemisphere on the left is then the
+* visible sky, centered on the zenith. Adding -timelapse also saves NumFrames
+* frames of the sky MinutesApart minutes apart, starting at the given time, as
+* OutputFilename-frameN.png, where the frame number N is zero-padded to the
+* width of the last frame number (frame00 to frame95 for 96 frames). The
+* stars are only loaded once, and the frames are drawn in parallel, each into
+* its own image.
+*
+* With -headless (or when there is no display), no draw window is opened: the
+* map is only drawn offscreen and saved, and the program exits when it is
+* done. This is the same as running with -Djava.awt.headless=true.
 */
 
 // Map Types:
@@ -26,235 +59,117 @@
 // 4 is Kavrayskiy VII
 // 5 is two Stereographic hemispheres (centered at the poles) placed together.
 // 6 is the gnomonic cube
+// The projections themselves are implemented in Projection.java.
 
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
 import java.io.FileNotFoundException;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.awt.Color;
 
 
 public class createMapStdDraw
 {
 
-    // calculates great circle distance between points (long1, lat1) and (long2, lat2)
-    private static double distance(double long1, double lat1, double long2, double lat2)
+    // the stars to draw, in drawing order, as passed to StarSprites.draw.
+    // Positions and diameters are in pixels of the canvas.
+    private static double[] starXs = new double[1 << 16];
+    private static double[] starYs = new double[1 << 16];
+    private static int[] starColors = new int[1 << 16];
+    private static double[] starDiameters = new double[1 << 16];
+    private static double[] starMags = new double[1 << 16];
+    private static int numStars = 0;
+
+    // the stars loaded from the input files, as longitude, latitude, color
+    // (packed as 0xRRGGBB) and magnitude, before they are projected
+    private static double[] pointLongits = new double[1 << 16];
+    private static double[] pointLats = new double[1 << 16];
+    private static int[] pointColors = new int[1 << 16];
+    private static double[] pointMags = new double[1 << 16];
+    private static int numPoints = 0;
+
+    // the faintest magnitude of star drawn
+    private static double maxMag = 6.5;
+
+    // add a star read from an input file, unless it is too faint to draw
+    private static void addPoint(double longit, double lat, int color, double mag)
+    {
+        if (mag <= maxMag)
+        {
+            if (numPoints == pointLongits.length)
+            {
+                int capacity = 2*numPoints;
+                pointLongits = Arrays.copyOf(pointLongits, capacity);
+                pointLats = Arrays.copyOf(pointLats, capacity);
+                pointColors = Arrays.copyOf(pointColors, capacity);
+                pointMags = Arrays.copyOf(pointMags, capacity);
+            }
+            pointLongits[numPoints] = longit;
+            pointLats[numPoints] = lat;
+            pointColors[numPoints] = color;
+            pointMags[numPoints] = mag;
+            numPoints++;
+        }
+    }
+
+    // the diameter, in pixels of the canvas, of a star of magnitude mag
+    private static double starDiameter(double mag, int scale)
     {
-        double a = Math.sin((long2-long1)*(Math.PI/180)/2);
-        double b = Math.sin((lat2-lat1)*(Math.PI/180)/2);
-        double c = b*b*Math.cos(long1*(Math.PI/180))*Math.cos(long2*(Math.PI/180));
-        return 2*Math.asin(Math.sqrt(a*a + c));
+        // brightness is 10^(-0.4*mag), so to make area reflect
+        // brightness the diameter has to be related to
+        // sqrt of brightness.
+        double size = Math.pow(10, ((-0.2*mag)+1.3));
+
+        // 1.0 for smaller, more realistic stars
+        // 3.0 for big stars
+        // 2.0 is in between.
+        double starScale = 2.0;
+        return Math.max(Math.round(size*0.5*starScale),1) / (double) scale;
     }
-    // calculates the desired x position of the point at longitude longit and
-    // latitude lat on a map of size width by height, given that the map
-    // projection is of type type
-    private static double getX(double longit, double lat, int width, int height, int type)
+
+    // project the star at longitude longit and latitude lat and add it to the
+    // stars to draw with the given color (packed as 0xRRGGBB) and a size based
+    // on its magnitude, which must be at most maxMag. xy is scratch space for
+    // the projected position. Projected y values increase upward on the
+    // canvas, which is canvasHeight pixels high.
+    private static void addStar(double longit, double lat, int color, double mag,
+                                Projection projection, double[] xy, int scale, int canvasHeight)
     {
-        switch (type)
+        projection.project((-1*longit), lat, xy);
+        int x = (int)Math.round(xy[0]);
+        int y = (int)Math.round(xy[1]);
+
+        if (numStars == starXs.length)
         {
-            case 6:
-                int latOffset = 225;
-                lat += latOffset;
-                int sideLength = Math.min(((width-1)/4),((height-1)/3));
-                double xCenter = 0.0;
-                double yCenter = 0.0;
-                double longCenter;
-                double latCenter;
-                double normalLat = lat;
-                while (normalLat < 0)
-                {
-                    normalLat += 360;
-                }
-                double targetLat = (normalLat)-(normalLat%90) + 45;
-                int i;
-                //-135 puts it above the second square
-                // 45 above the 4th square
-                double poleLatChange = 45;
-                if (distance(-45,targetLat,longit,lat) > Math.PI/2) // north
-                {
-                    lat += poleLatChange;
-                    i = -1;
-                    xCenter = 3.5*sideLength;
-                    yCenter = 0.5*sideLength;
-                    longCenter = 90.0;
-                    latCenter = 0.0;
-                }
-                else if (distance(45,targetLat,longit,lat) > Math.PI/2) // south
-                {
-                    lat += poleLatChange;
-                    i = -2;
-                    xCenter = 3.5*sideLength;
-                    yCenter = 2.5*sideLength;
-                    longCenter = -90.0;
-                    latCenter = 0.0;
-                }
-                else
-                {
-                    i = ((int) Math.floor(normalLat/90))%4;
-                    longCenter = 0.0;
-                    latCenter = 90*i + 45;
-                    xCenter = (i+0.5)*sideLength;
-                    yCenter = 1.5*sideLength;
-                }
-                double cosC = Math.sin(longCenter*(Math.PI/180))*Math.sin(longit*(Math.PI/180))
-                            + Math.cos(longCenter*(Math.PI/180))*Math.cos(longit*(Math.PI/180))*Math.cos((lat-latCenter)*(Math.PI/180));
-                //System.out.println(Math.cos(lat*(Math.PI/180))*Math.sin((longit-longCenter)*(Math.PI/180))+","+cosC+","+i);
-                //if (i != -1) return 0;
-                return xCenter + sideLength/2*Math.cos(longit*(Math.PI/180))*Math.sin((lat-latCenter)*(Math.PI/180))/cosC;
-            case 5:
-                double phi;
-                if (longit < 0) phi = -longit;
-                else phi = longit;
-                phi += 90;
-                phi *= (Math.PI/180);
-                double theta = (lat + 90) * (Math.PI/180);
-                double scale5 = Math.min((height-1)/2.0, (width-1)/4.0);
-                double r = scale5 * (1/Math.tan(phi/2.0));
-                if (longit < 0)
-                {
-                    return (int) (r*Math.cos(theta) + (width-1)/2 +-1*scale5);
-                }
-                else
-                {
-                    return (int) (-1*r*Math.cos(theta) + (width-1)/2 + scale5);
-                }
-            case 4:
-                longit *= (Math.PI/180);
-                lat *= (Math.PI/180);
-                double scale4 = ((width-2)/2.0)*Math.sqrt(3)/(Math.PI*1.5);
-                return scale4*1.5*lat*Math.sqrt((Math.PI*Math.PI)/3 - longit*longit)/Math.PI+width/2.0;
-
-            case 3:
-                longit *= (Math.PI/180);
-                lat *= (Math.PI/180);
-                double scale3 = ((width-2)/2.0)/(2*Math.PI);
-                return scale3*lat*Math.sqrt((4 - 3*Math.sin(Math.abs(longit)))) + width/2.0;
-
-            case 2:
-                longit *= (Math.PI/180);
-                lat *= (Math.PI/180);
-                double sinPhiPrime = Math.tan(longit/2);
-                double cosPhiPrime = Math.sqrt(1-sinPhiPrime*sinPhiPrime);//Math.cos(Math.asin(sinPhiPrime));
-                return ((height-1)/2.0)*cosPhiPrime*Math.sin(lat/2)/(1
-                            + cosPhiPrime*Math.cos(lat/2)) + (width/2);
-
-            case 1:
-                return ((lat/360.0)*(width-1)) + (width-1)/2.0;
-
-            case 0:
-                return (lat/360.0)*(width-1) + (width-1)/2.0;
-
-            default:
-                throw new IllegalArgumentException("Invalid Map Type");
+            int capacity = 2*numStars;
+            starXs = Arrays.copyOf(starXs, capacity);
+            starYs = Arrays.copyOf(starYs, capacity);
+            starColors = Arrays.copyOf(starColors, capacity);
+            starDiameters = Arrays.copyOf(starDiameters, capacity);
+            starMags = Arrays.copyOf(starMags, capacity);
         }
+        starXs[numStars] = x/scale;
+        starYs[numStars] = canvasHeight - y/scale;
+        starColors[numStars] = color;
+        starDiameters[numStars] = starDiameter(mag, scale);
+        starMags[numStars] = mag;
+        numStars++;
     }
 
-    // calculates the desired y position of the point at longitude longit and
-    // latitude lat on a map of size width by height, given that the map
-    // projection is of type type
-    private static double getY(double longit, double lat, int width, int height, int type)
+    // throws if the option args[i] is not followed by count values
+    private static void checkValues(String[] args, int i, int count)
     {
-
-        switch (type)
+        if (i + count >= args.length)
         {
-            case 6:
-                int latOffset = 225;
-                lat += latOffset;
-                int sideLength = Math.min(((width-1)/4),((height-1)/3));
-                double xCenter = 0.0;
-                double yCenter = 0.0;
-                double longCenter;
-                double latCenter;
-                double normalLat = lat;
-                while (normalLat < 0)
-                {
-                    normalLat += 360;
-                }
-                double targetLat = (normalLat)-(normalLat%90) + 45;
-                int i;
-                //-135 puts it above the second square
-                // 45 above the 4th square
-                double poleLatChange = 45;
-                if (distance(-45,targetLat,longit,lat) > Math.PI/2) // north
-                {
-                    lat += poleLatChange;
-                    i = -1;
-                    xCenter = 3.5*sideLength;
-                    yCenter = 0.5*sideLength;
-                    longCenter = 90.0;
-                    latCenter = 0.0;
-                }
-                else if (distance(45,targetLat,longit,lat) > Math.PI/2) // south
-                {
-                    lat += poleLatChange;
-                    i = -2;
-                    xCenter = 3.5*sideLength;
-                    yCenter = 2.5*sideLength;
-                    longCenter = -90.0;
-                    latCenter = 0.0;
-                }
-                else
-                {
-                    i = ((int) Math.floor(normalLat/90))%4;
-                    longCenter = 0.0;
-                    latCenter = 90*i + 45;
-                    xCenter = (i+0.5)*sideLength;
-                    yCenter = 1.5*sideLength;
-                }
-                double cosC = Math.sin(longCenter*(Math.PI/180))*Math.sin(longit*(Math.PI/180))
-                              + Math.cos(longCenter*(Math.PI/180))*Math.cos(longit*(Math.PI/180))*Math.cos((lat-latCenter)*(Math.PI/180));
-                //if (i != -1) return 0;
-                return yCenter - sideLength/(2)*(Math.cos(longCenter*(Math.PI/180))*Math.sin(longit*(Math.PI/180))
-                       - Math.sin(longCenter*(Math.PI/180))*Math.cos(longit*(Math.PI/180))*Math.cos((lat-latCenter)*(Math.PI/180)))/cosC;
-            case 5:
-                double phi;
-                if (longit < 0) phi = -longit;
-                else phi = longit;
-                phi += 90;
-                phi *= (Math.PI/180);
-                double theta = (lat + 90) * (Math.PI/180);
-                double scale5 = Math.min((height-1)/2.0, (width-1)/4.0);
-                double r = scale5 * (1/Math.tan(phi/2.0));
-                return (int) (r*Math.sin(theta) + (height-1)/2);
-            case 4:
-                longit *= (Math.PI/180);
-                double scale4 = ((width-2)/2.0)*Math.sqrt(3)/(Math.PI*1.5);
-                return -1*scale4*longit+height/2.0;
-
-            case 3:
-                if(longit == 0)
-                {
-                    return height/2.0;
-                }
-                longit *= (Math.PI/180);
-                lat *= (Math.PI/180);
-                double scale3 = ((width-1)/2.0)/2;
-                double y3 = (2 - Math.sqrt(4 - 3*Math.sin(Math.abs(longit))))*(longit/Math.abs(longit));
-                return -1*scale3 * y3 + height/2.0;
-
-            case 2:
-                longit *= (Math.PI/180);
-                lat *= (Math.PI/180);
-                double sinPhiPrime = Math.tan(longit/2);
-                double cosPhiPrime = Math.sqrt(1-sinPhiPrime*sinPhiPrime);//Math.cos(Math.asin(sinPhiPrime));
-                return -1*((height/2.0-1))*sinPhiPrime/(1 + cosPhiPrime*Math.cos(lat/2)) + (height/2);
-
-            case 1:
-                longit *= (Math.PI/180);
-                double y1 = Math.log(Math.tan(0.25*Math.PI + 0.5*longit));
-                y1 *= -1*height/4.0;
-                y1 += height/2.0;
-                y1 = Math.max(Math.min(y1,height-1),0);
-                return y1;
-
-            case 0:
-                return -1*(longit/180)*(height-1) + (height-1)/2.0;
-
-            default:
-                throw new IllegalArgumentException("Invalid Map Type");
+            throw new IllegalArgumentException("Missing values for " + args[i]);
         }
     }
 
@@ -265,7 +180,67 @@ public class createMapStdDraw
         String sourceImageFilename = "baseImages/" + args[0];
         String outputFileName = "outputImages/" + args[2] + ".png";
         int myType = Integer.parseInt(args[1]);
-        int numFiles = Integer.parseInt(args[3]);
+        String[] previewNames = new String[0];
+        double observerLat = 0;
+        double observerLong = 0;
+        Instant observerTime = null;
+        int numFrames = 0;
+        double frameMinutes = 0;
+        int argIndex = 3;
+        while (argIndex < args.length && args[argIndex].startsWith("-"))
+        {
+            if (args[argIndex].equals("-headless"))
+            {
+                // must be set before StdDraw is first used
+                System.setProperty("java.awt.headless", "true");
+                argIndex++;
+            }
+            else if (args[argIndex].equals("-maxMag"))
+            {
+                checkValues(args, argIndex, 1);
+                maxMag = Double.parseDouble(args[argIndex+1]);
+                argIndex += 2;
+            }
+            else if (args[argIndex].equals("-previews"))
+            {
+                checkValues(args, argIndex, 1);
+                previewNames = args[argIndex+1].split(",");
+                argIndex += 2;
+            }
+            else if (args[argIndex].equals("-observer"))
+            {
+                checkValues(args, argIndex, 3);
+                observerLat = Double.parseDouble(args[argIndex+1]);
+                observerLong = Double.parseDouble(args[argIndex+2]);
+                observerTime = Instant.parse(args[argIndex+3]);
+                argIndex += 4;
+            }
+            else if (args[argIndex].equals("-timelapse"))
+            {
+                checkValues(args, argIndex, 2);
+                numFrames = Integer.parseInt(args[argIndex+1]);
+                frameMinutes = Double.parseDouble(args[argIndex+2]);
+                argIndex += 3;
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown option " + args[argIndex]);
+            }
+        }
+        if (numFrames > 0 && observerTime == null)
+        {
+            throw new IllegalArgumentException("-timelapse needs -observer");
+        }
+        if (argIndex >= args.length)
+        {
+            throw new IllegalArgumentException("Missing NumInputs");
+        }
+        int numFiles = Integer.parseInt(args[argIndex]);
+        int firstFileIndex = argIndex + 1;
+        if (numFiles < 0 || firstFileIndex + numFiles > args.length)
+        {
+            throw new IllegalArgumentException("Expected " + numFiles + " input files");
+        }
 
         // load source file
         BufferedImage img = null;
@@ -285,7 +260,9 @@ public class createMapStdDraw
         int height = img.getHeight();
 
         int scale = 1;
-        StdDraw.setCanvasSize((width/scale), (height/scale));
+        int canvasWidth = width/scale;
+        int canvasHeight = height/scale;
+        StdDraw.setCanvasSize(canvasWidth, canvasHeight);
         StdDraw.setXscale(0.0, (double) (width/scale));
         StdDraw.setYscale(0.0, (double) (height/scale));
 
@@ -294,12 +271,55 @@ public class createMapStdDraw
         StdDraw.picture(width/2.0, height/2.0, sourceImageFilename, width, height);
         StdDraw.show();
 
-        // draw datapoints onto the image
-        int count = 0;
+        // load the datapoints
         for(int i = 0; i < numFiles; i++)
         {
-            String myFileName = "pointData/" + args[i+4];
+            String myFileName = "pointData/" + args[firstFileIndex+i];
             File myFile = new File(myFileName);
+
+            // binary point files are memory-mapped rather than parsed
+            if (PointFile.isPointFile(myFile))
+            {
+                try {
+                    PointFile points = PointFile.open(myFile);
+                    if (!points.hasMagnitude())
+                    {
+                        throw new IllegalArgumentException("File " + myFileName
+                                                           + " has no magnitudes");
+                    }
+                    if (points.isByMagnitude())
+                    {
+                        // only read up to the first star too faint to draw,
+                        // then draw the stars in their original order so
+                        // that overlapping stars are drawn the same way
+                        int size = points.countUpTo(maxMag);
+                        long[] keys = new long[size];
+                        for (int p = 0; p < size; p++)
+                        {
+                            keys[p] = ((long) points.getOriginalIndex(p) << 32) | p;
+                        }
+                        Arrays.sort(keys);
+                        for (int k = 0; k < size; k++)
+                        {
+                            int p = (int) keys[k];
+                            addPoint(points.getLongit(p), points.getLat(p), points.getColor(p),
+                                     points.getMagnitude(p));
+                        }
+                        continue;
+                    }
+                    int size = points.size();
+                    for (int p = 0; p < size; p++)
+                    {
+                        addPoint(points.getLongit(p), points.getLat(p), points.getColor(p),
+                                 points.getMagnitude(p));
+                    }
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("File " + myFileName
+                                                       + " is invalid");
+                }
+                continue;
+            }
+
             try {
                 myScanner = new Scanner(myFile);
 
@@ -310,28 +330,14 @@ public class createMapStdDraw
                     int red = myScanner.nextInt();
                     int green = myScanner.nextInt();
                     int blue = myScanner.nextInt();
-                    StdDraw.setPenColor(red, green, blue);
                     //int temp = myScanner.nextInt();
                     double mag = myScanner.nextDouble();
-                    int x = (int)Math.round(getX((-1*longit),lat,width,height, myType));
-                    int y = (int)Math.round(getY((-1*longit),lat,width,height, myType));
-
-                    Double maxMag = 6.5;
-                    if (mag <= maxMag)
+                    if (red < 0 || red >= 256 || green < 0 || green >= 256 || blue < 0 || blue >= 256)
                     {
-                        // brightness is 10^(-0.4*mag), so to make area reflect
-                        // brightness the diameter has to be related to
-                        // sqrt of brightness.
-                        double size = Math.pow(10, ((-0.2*mag)+1.3));
-
-                        // 1.0 for smaller, more realistic stars
-                        // 3.0 for big stars
-                        // 2.0 is in between.
-                        double starScale = 2.0;
-                        StdDraw.setPenRadius((1/512.0/scale) * (Math.max(Math.round(size*0.5*starScale),1)));
-                        StdDraw.point(x/scale, y/scale);
+                        throw new IllegalArgumentException("Invalid color " + red + " " + green
+                                                           + " " + blue + " in " + myFileName);
                     }
-
+                    addPoint(longit, lat, (red << 16) | (green << 8) | blue, mag);
                 }
                 myScanner.close();
             } catch (FileNotFoundException e) {
@@ -340,10 +346,94 @@ public class createMapStdDraw
             }
         }
 
+        // project the stars, as seen by the observer if there is one
+        Projection projection = Projection.forType(myType, width, height);
+        double[] xy = new double[2];
+        SkyView sky = null;
+        if (observerTime != null)
+        {
+            sky = new SkyView(pointLongits, pointLats, numPoints);
+            double[] alts = new double[numPoints];
+            double[] azimuths = new double[numPoints];
+            sky.toHorizon(observerLat, SkyView.siderealTime(observerTime.toEpochMilli(), observerLong),
+                          alts, azimuths);
+            for (int i = 0; i < numPoints; i++)
+            {
+                if (alts[i] >= 0)
+                {
+                    addStar(alts[i], azimuths[i], pointColors[i], pointMags[i],
+                            projection, xy, scale, canvasHeight);
+                }
+            }
+        }
+        else
+        {
+            for (int i = 0; i < numPoints; i++)
+            {
+                addStar(pointLongits[i], pointLats[i], pointColors[i], pointMags[i],
+                        projection, xy, scale, canvasHeight);
+            }
+        }
+
+        // save a preview with only the brighter stars for each preview
+        // magnitude, brightest first, then put the background back
+        StarSprites sprites = new StarSprites();
+        int[] pixels = StdDraw.getPixels();
+        int[] background = pixels.clone();
+        // the preview magnitudes, in increasing order
+        double[] previewMags = new double[previewNames.length];
+        for (int p = 0; p < previewNames.length; p++)
+        {
+            double mag = Double.parseDouble(previewNames[p]);
+            String name = previewNames[p];
+            int q = p;
+            while (q > 0 && previewMags[q-1] > mag)
+            {
+                previewMags[q] = previewMags[q-1];
+                previewNames[q] = previewNames[q-1];
+                q--;
+            }
+            previewMags[q] = mag;
+            previewNames[q] = name;
+        }
+        if (previewNames.length > 0)
+        {
+            for (int p = 0; p < previewNames.length; p++)
+            {
+                for (int i = 0; i < numStars; i++)
+                {
+                    if (starMags[i] <= previewMags[p])
+                    {
+                        sprites.draw(pixels, canvasWidth, canvasHeight, starXs[i], starYs[i],
+                                     starDiameters[i], starColors[i]);
+                    }
+                }
+                StdDraw.pixelsChanged(0, 0, canvasWidth, canvasHeight);
+                StdDraw.save("outputImages/" + args[2] + "-mag" + previewNames[p] + ".png");
+                System.arraycopy(background, 0, pixels, 0, pixels.length);
+            }
+        }
+
+        // stamp all of the stars straight into the canvas at once
+        sprites.draw(pixels, canvasWidth, canvasHeight, starXs, starYs,
+                     starColors, starDiameters, numStars);
+        StdDraw.pixelsChanged(0, 0, canvasWidth, canvasHeight);
+
         // Write the image to the specified output
         String finalFileName = outputFileName;
         StdDraw.save(finalFileName);
 
+        // draw the frames of the time-lapse, each into its own image
+        if (numFrames > 0)
+        {
+            TimeLapse timeLapse = new TimeLapse(sky, projection, background, canvasWidth, canvasHeight,
+                                                scale, observerLat, observerLong,
+                                                observerTime.toEpochMilli(), frameMinutes,
+                                                "outputImages/" + args[2] + "-frame",
+                                                String.valueOf(numFrames - 1).length());
+            ForkJoinPool.commonPool().invoke(new FrameAction(timeLapse, 0, numFrames));
+        }
+
         // reset the canvas to blank
         StdDraw.setCanvasSize();
         StdDraw.setXscale();
@@ -351,4 +441,115 @@ public class createMapStdDraw
 
 
     }
+
+    // what every frame of a time-lapse shares: the stars, the projection and
+    // the background, none of which change from frame to frame
+    private static final class TimeLapse
+    {
+        private final SkyView sky;
+        private final Projection projection;
+        private final int[] background;
+        private final int width;
+        private final int height;
+        private final int scale;
+        private final double latitude;
+        private final double longitude;
+        private final long startMillis;
+        private final double frameMinutes;
+        private final String filePrefix;
+        private final int digits;
+
+        TimeLapse(SkyView sky, Projection projection, int[] background, int width, int height,
+                  int scale, double latitude, double longitude, long startMillis,
+                  double frameMinutes, String filePrefix, int digits)
+        {
+            this.sky = sky;
+            this.projection = projection;
+            this.background = background;
+            this.width = width;
+            this.height = height;
+            this.scale = scale;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.startMillis = startMillis;
+            this.frameMinutes = frameMinutes;
+            this.filePrefix = filePrefix;
+            this.digits = digits;
+        }
+
+        // draw frame k into a new image and save it. Each frame has its own
+        // image, positions and sprites, so frames can be drawn at once.
+        void drawFrame(int k)
+        {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            System.arraycopy(background, 0, pixels, 0, pixels.length);
+
+            int n = sky.size();
+            double[] alts = new double[n];
+            double[] azimuths = new double[n];
+            long millis = startMillis + Math.round(k*frameMinutes*60000);
+            sky.toHorizon(latitude, SkyView.siderealTime(millis, longitude), alts, azimuths);
+
+            StarSprites sprites = new StarSprites();
+            double[] xy = new double[2];
+            for (int i = 0; i < n; i++)
+            {
+                if (alts[i] >= 0)
+                {
+                    projection.project(-1*alts[i], azimuths[i], xy);
+                    int x = (int)Math.round(xy[0]);
+                    int y = (int)Math.round(xy[1]);
+                    sprites.draw(pixels, width, height, x/scale, height - y/scale,
+                                 starDiameter(pointMags[i], scale), pointColors[i]);
+                }
+            }
+
+            String number = String.valueOf(k);
+            while (number.length() < digits)
+            {
+                number = "0" + number;
+            }
+            try
+            {
+                ImageIO.write(image, "png", new File(filePrefix + number + ".png"));
+            } catch (IOException e)
+            {
+                throw new IllegalArgumentException("Cannot save frame " + k, e);
+            }
+        }
+    }
+
+    // draws frames start to end (exclusive) of a time-lapse, splitting them
+    // in half across threads down to single frames
+    private static final class FrameAction extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final TimeLapse timeLapse;
+        private final int start;
+        private final int end;
+
+        FrameAction(TimeLapse timeLapse, int start, int end)
+        {
+            this.timeLapse = timeLapse;
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute()
+        {
+            if (end - start <= 1)
+            {
+                if (end > start)
+                {
+                    timeLapse.drawFrame(start);
+                }
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new FrameAction(timeLapse, start, middle),
+                      new FrameAction(timeLapse, middle, end));
+        }
+    }
 }
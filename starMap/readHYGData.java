@@ -4,9 +4,11 @@
 * Last Updated: 7/18/17
 *
 * Compilation: javac readHYGData.java
-* Execution: java readHYGData SourceFilename.csv magnitudeType includeColor
+* Execution: java readHYGData SourceFilename.csv magnitudeType includeColor [-chunk NumStars] [-cache CacheFile] [-points PointFile [-byMagnitude]]
 * Example: java readHYGData rawData/hygfull.csv 1 0 > pointData/brightestAlternateHYG.txt
 * Example: java readHYGData rawData/hygfull.csv 0 1 > pointData/brightestHYGWithColor.txt
+* Example: java readHYGData rawData/hygfull.csv 0 1 -cache rawData/hygfull.cache > pointData/brightestHYGWithColor.txt
+* Example: java readHYGData rawData/hygfull.csv 0 1 -points pointData/brightestHYGWithColor.pts
 *
 * Read and process the data from the HYG 1.1 star dataset into a format
 * compatible with createMapStdDraw.java. Output position info, color info, and
@@ -19,6 +21,30 @@
 *
 * If includeColor is 0, all stars will be white. Otherwise, they will be based
 * on the color of the star (without atmospheric scattering accounted for).
+*
+* The CSV is read with HYGCsv, which memory-maps it and parses the values
+* directly from its bytes, into a StarCatalog holding only the columns this
+* run needs. Stars that can neither be printed nor change a star that is
+* (most of the faint ones) are left out as the file is read; see StarFilter.
+*
+* There is no limit on the number of stars. Catalogs of up to NumStars stars
+* (by default, as many as fit comfortably in memory) are sorted in memory;
+* larger ones are sorted in pieces of NumStars stars written to temporary
+* files, which are then merged (see StarRuns), so only a few pieces' worth of
+* stars are in memory at once. The output is the same either way.
+*
+* With -cache, the stars are read from CacheFile instead: a binary copy of the
+* catalog, already sorted and with the normalized magnitudes worked out (see
+* StarCache). It is built from the CSV the first time, and rebuilt whenever
+* the CSV changes, so later runs start almost at once. Any file name will do,
+* for example rawData/hygfull.cache.
+*
+* With -points, nothing is printed; the stars are written to PointFile as a
+* binary point file instead (see PointFile), with each color packed into an
+* int, which createMapStdDraw reads without parsing any text. The file is the
+* same as converting the printed output with PointFile. With -byMagnitude as
+* well, the stars in it are sorted brightest first, so that createMapStdDraw
+* can read only the stars it draws.
 */
 
 
@@ -26,228 +52,461 @@ import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class readHYGData
 {
-    // Class for storing information about star data.
-    private static class Star implements Comparable<Star>
+    // the threshold of star magnitude to include (weak stars are ignored)
+    private static final double MAGNITUDE_THRESHOLD = 6.5;
+
+    // stars closer than this (in hours of right ascension and degrees of
+    // declination) are combined
+    private static final double CLOSE_DISTANCE = 0.01;
+
+    // number of stars in each partition combined and printed by one task
+    private static final int PARTITION_SIZE = 1 << 12;
+
+    // combine the magnitudes of close stars, then print each of the first
+    // numPrimaries stars that is not combined into an earlier one and is
+    // bright enough. The stars must be sorted by right ascension, and stars
+    // after the first numPrimaries are only there to be combined into them.
+    // marked[i] is true for stars already combined into an earlier star.
+    //
+    // The stars are split into partitions of consecutive right ascension,
+    // which find their close stars and format their lines at the same time.
+    // Close stars are looked up in a grid of all of the stars, so those just
+    // past the end of a partition (or across 0h/24h) are found just as in a
+    // single pass. Which stars are combined into earlier ones is then settled
+    // in order from the lists of close stars, since a star only absorbs others
+    // if it was not absorbed itself. The lines are printed partition by
+    // partition, so the output does not depend on the number of processors.
+    // If points is not null, the stars are written to it instead.
+    private static void combineAndPrint(final StarCatalog myStars, int numPrimaries, final boolean[] marked,
+                                        final int magnitudeType, final boolean includeColor,
+                                        PointFile.Writer points) throws IOException
     {
-        private int StarID;
-        private int Hip;
-        private int HD;
-        private String HR;
-        private String Gliese;
-        private String BayerFlamsteed;
-        private String ProperName;
-        private double RA;
-        private double Dec;
-        private double Distance; // in parsecs
-        private double Mag;
-        private double AbsMag;
-        private String Spectrum;
-        private double ColorIndex;
-        private double NormalizedApparentMag;
-
-        // given a CSV input line, split it and parse each of the values.
-        public Star(String input)
-        {
-            String[] items = input.split(",");
-            StarID = Integer.parseInt(items[0].trim());
-            Hip = valOrNeg1(items[1].trim());
-            HD = valOrNeg1(items[2].trim());
-            HR = items[3].trim();
-            Gliese = items[4].trim();
-            BayerFlamsteed = items[5].trim();
-            ProperName = items[6].trim();
-            RA = valOrNAN(items[7].trim());
-            Dec = valOrNAN(items[8].trim());
-            Distance = valOrNAN(items[9].trim());
-            Mag = valOrNAN(items[10].trim());
-            AbsMag = valOrNAN(items[11].trim());
-            Spectrum = items[12].trim();
-            ColorIndex = valOrNAN(items[13].trim());
-
-            NormalizedApparentMag = 4.83 + 5*((Math.log10(Distance))-1);//4.83 is sun's mag
-        }
+        final StarGrid grid = new StarGrid(myStars, CLOSE_DISTANCE, CLOSE_DISTANCE);
+        final double[] magsToDraw = new double[numPrimaries];
 
-        private int valOrNeg1(String input)
+        int numPartitions = (numPrimaries + PARTITION_SIZE - 1) / PARTITION_SIZE;
+        final Partition[] partitions = new Partition[numPartitions];
+        for (int p = 0; p < numPartitions; p++)
         {
-            if (input.equals("")) return -1;
-            else return Integer.parseInt(input);
+            partitions[p] = new Partition(p*PARTITION_SIZE, Math.min((p+1)*PARTITION_SIZE, numPrimaries));
         }
 
-        private double valOrNAN(String input)
+        // find the stars close to each star and combine their magnitudes
+        ForkJoinPool.commonPool().invoke(new PartitionAction(partitions, 0, numPartitions, new PartitionTask()
         {
-            if (input.equals("")) return Double.NaN;
-            else return Double.parseDouble(input);
-        }
-
+            public void run(Partition partition)
+            {
+                findClose(myStars, grid.copy(), partition, magsToDraw, magnitudeType);
+            }
+        }));
 
-        // comparison functions
-        public int compareTo(Star that)
+        // mark the stars combined into earlier stars that are not themselves
+        // marked, in order
+        for (Partition partition : partitions)
         {
-            return compareMag(that);
+            for (int i = partition.start; i < partition.end; i++)
+            {
+                // if this star has already been handled (marked), skip it
+                if (marked[i] == false)
+                {
+                    for (int k = partition.closeStarts[i - partition.start]; k < partition.closeStarts[i - partition.start + 1]; k++)
+                    {
+                        marked[partition.close[k]] = true;
+                    }
+                }
+            }
         }
 
-        public int compareMag(Star that)
+        // a binary point file takes the values as they are, so there is
+        // nothing to format
+        if (points != null)
         {
-            if (this.Mag < that.Mag)      return -1;
-            else if (this.Mag > that.Mag) return  1;
-            else                          return  0;
+            for (int i = 0; i < numPrimaries; i++)
+            {
+                if (marked[i] == false && magsToDraw[i] <= MAGNITUDE_THRESHOLD)
+                {
+                    points.write(myStars.getDec(i), modifiedRA(myStars, i),
+                                 starColor(myStars, i, includeColor), magsToDraw[i]);
+                }
+            }
+            return;
         }
 
-        public int compareNormMag(Star that)
+        ForkJoinPool.commonPool().invoke(new PartitionAction(partitions, 0, numPartitions, new PartitionTask()
+        {
+            public void run(Partition partition)
+            {
+                formatLines(myStars, partition, marked, magsToDraw, includeColor);
+            }
+        }));
+        for (Partition partition : partitions)
         {
-            if (this.NormalizedApparentMag < that.NormalizedApparentMag)      return -1;
-            else if (this.NormalizedApparentMag > that.NormalizedApparentMag) return  1;
-            else                          return  0;
+            System.out.print(partition.lines);
         }
+    }
 
-        public int compareDist(Star that)
+    // for each star of a partition, list the stars after it that are close
+    // enough to combine with it and find the magnitude of them all combined
+    private static void findClose(StarCatalog myStars, StarGrid grid, Partition partition,
+                                  double[] magsToDraw, int magnitudeType)
+    {
+        int[] close = new int[64];
+        int numClose = 0;
+        int[] closeStarts = new int[partition.end - partition.start + 1];
+        for (int i = partition.start; i < partition.end; i++)
         {
-            if (this.Distance < that.Distance)      return -1;
-            else if (this.Distance > that.Distance) return  1;
-            else                                    return  0;
+            closeStarts[i - partition.start] = numClose;
+            double magToDraw;
+            if (magnitudeType == 1) {
+              magToDraw = myStars.getNormMag(i);
+            } else {
+              magToDraw = myStars.getMag(i);
+            }
+            // if there are any stars that are right next to this one
+            // (i.e. within 0.01 Right Ascension and Declination) then we
+            // combine their magnitudes into what appears to be one super
+            // star. Only stars after this one (by right ascension) are
+            // combined into it, in order, and the grid also finds stars
+            // just across 0h/24h.
+            int numNear = grid.findNear(i);
+            for (int k = 0; k < numNear; k++)
+            {
+                int j = grid.getNear(k);
+                if (j <= i)
+                {
+                    continue;
+                }
+                double raDistance = Math.abs(myStars.getRA(j) - myStars.getRA(i));
+                raDistance = Math.min(raDistance, 24.0 - raDistance);
+                if (raDistance < CLOSE_DISTANCE && Math.abs(myStars.getDec(j) - myStars.getDec(i)) < CLOSE_DISTANCE)
+                {
+                    // uncomment to view which stars are close to eachother.
+                    // System.err.println(i+" ; "+j);
+                    double newMag;
+                    if (magnitudeType == 1) {
+                      newMag = myStars.getNormMag(j);
+                    } else {
+                      newMag = myStars.getMag(j);
+                    }
+                    magToDraw = Math.log10(Math.pow(10,(-0.4*magToDraw))+Math.pow(10,(-0.4*newMag)))/-0.4;
+                    if (numClose == close.length)
+                    {
+                        close = Arrays.copyOf(close, 2*numClose);
+                    }
+                    close[numClose++] = j;
+                }
+            }
+            magsToDraw[i] = magToDraw;
         }
+        closeStarts[partition.end - partition.start] = numClose;
+        partition.close = close;
+        partition.closeStarts = closeStarts;
+    }
 
-        public int compareRA(Star that)
+    // write the line of each star of a partition that is not combined into an
+    // earlier star and is bright enough
+    private static void formatLines(StarCatalog myStars, Partition partition, boolean[] marked,
+                                    double[] magsToDraw, boolean includeColor)
+    {
+        StringBuilder lines = new StringBuilder();
+        String newLine = System.lineSeparator();
+        for (int i = partition.start; i < partition.end; i++)
         {
-            if (this.RA < that.RA)      return -1;
-            else if (this.RA > that.RA) return  1;
-            else                          return  0;
+            double magToDraw = magsToDraw[i];
+            // if the magnitude is below a threshold, aka the star is bright
+            // enough, then print the declination, a modified right
+            // ascension (to be more like longitude), the color and the
+            // magnitude.
+            if (marked[i] == false && magToDraw <= MAGNITUDE_THRESHOLD)
+            {
+                int color = starColor(myStars, i, includeColor);
+                lines.append(myStars.getDec(i)).append(' ').append(modifiedRA(myStars, i)).append(' ')
+                     .append((color >> 16) & 0xFF).append(' ').append((color >> 8) & 0xFF).append(' ')
+                     .append(color & 0xFF).append(' ').append(magToDraw).append(newLine);
+            }
         }
+        partition.lines = lines;
+    }
 
+    // the right ascension of star i as a longitude, in degrees
+    private static double modifiedRA(StarCatalog myStars, int i)
+    {
+        return -360*(myStars.getRA(i)/24.0) + 180.0;
+    }
 
-        // getters
-
-        public double getMag()
-        {
-            return Mag;
+    // the color of star i, packed as 0xRRGGBB
+    private static int starColor(StarCatalog myStars, int i, boolean includeColor)
+    {
+        // the color index is only loaded when color is included
+        double colorIndex = includeColor ? myStars.getColorIndex(i) : Double.NaN;
+        // if we include color and there is a color value,
+        // determine the appropriate color.
+        if (includeColor && (colorIndex != Double.NaN)) {
+          return StarColors.rgb(colorIndex);
+        } else { // otherwise, just make the star white
+          return 0xFFFFFF;
         }
+    }
 
-        public double getNormMag()
+    // a range of stars handled together, and what was found for them
+    private static final class Partition
+    {
+        final int start;
+        final int end;
+        // the stars close to star i are close[closeStarts[i-start]] up to
+        // (but not including) close[closeStarts[i-start+1]]
+        int[] close;
+        int[] closeStarts;
+        StringBuilder lines;
+
+        Partition(int start, int end)
         {
-            return NormalizedApparentMag;
+            this.start = start;
+            this.end = end;
         }
+    }
 
-        public double getColorIndex()
-        {
-            return ColorIndex;
-        }
+    private interface PartitionTask
+    {
+        void run(Partition partition);
+    }
 
-        public double getRA()
+    // runs a task on the partitions from start up to (but not including) end,
+    // one fork/join task per partition
+    private static final class PartitionAction extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Partition[] partitions;
+        private final int start;
+        private final int end;
+        private final PartitionTask task;
+
+        PartitionAction(Partition[] partitions, int start, int end, PartitionTask task)
         {
-            return RA;
+            this.partitions = partitions;
+            this.start = start;
+            this.end = end;
+            this.task = task;
         }
 
-        public double getDec()
+        protected void compute()
         {
-            return Dec;
+            if (end - start <= 1)
+            {
+                if (end > start)
+                {
+                    task.run(partitions[start]);
+                }
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new PartitionAction(partitions, start, middle, task),
+                      new PartitionAction(partitions, middle, end, task));
         }
     }
 
-    // comparators
-    private static class magComp implements Comparator<Star>
+    // combine and print the stars of a catalog too large to hold in memory.
+    // The sorted stars are read in blocks of about chunkSize stars, each
+    // followed by the stars close enough (in right ascension) to be combined
+    // into its last stars, so every block can be handled as if it were the
+    // whole catalog.
+    private static void combineAndPrintSorted(SortedStars stars, int columns, int chunkSize,
+                                              int magnitudeType, boolean includeColor,
+                                              PointFile.Writer points)
+        throws IOException
     {
-        public int compare(Star a, Star b)
+        // a margin wider than the distance, so that rounding can't leave out
+        // a star that should be combined
+        double margin = 2*CLOSE_DISTANCE;
+
+        // the stars just before 24h, which stars just after 0h can be combined
+        // with, and whether each has been combined into an earlier star
+        StarCatalog tail = stars.getTail();
+        long tailStart = stars.getTailStart();
+        boolean[] tailMarked = new boolean[tail.size()];
+
+        StarCatalog block = new StarCatalog(columns);
+        boolean[] marked = new boolean[chunkSize];
+        // the position in the whole order of the first star of the block
+        long position = 0;
+        while (block.size() > 0 || stars.hasNext())
         {
-            return a.compareMag(b);
+            // the stars to print, then those close enough to be combined
+            // into them
+            int start = block.size();
+            while (block.size() < chunkSize && stars.hasNext())
+            {
+                stars.next(block);
+            }
+            int numPrimaries = block.size();
+            double lastRA = block.getRA(numPrimaries - 1);
+            while (stars.hasNext() && stars.peekRA() - lastRA < margin)
+            {
+                stars.next(block);
+            }
+            int blockSize = block.size();
+            long end = position + blockSize;
+
+            // stars just after 0h can also be combined with those just
+            // before 24h, which would otherwise only come at the very end
+            if (block.getRA(0) < margin)
+            {
+                for (int t = 0; t < tail.size(); t++)
+                {
+                    if (tailStart + t >= end)
+                    {
+                        block.add(tail, t);
+                    }
+                }
+            }
+
+            if (marked.length < block.size())
+            {
+                marked = Arrays.copyOf(marked, 2*block.size());
+            }
+            Arrays.fill(marked, start, block.size(), false);
+            // bring in the stars of the tail combined into earlier stars
+            for (int k = 0; k < block.size(); k++)
+            {
+                int t = tailIndex(k, position, blockSize, end, tailStart, tail.size());
+                if (t >= 0 && tailMarked[t])
+                {
+                    marked[k] = true;
+                }
+            }
+
+            combineAndPrint(block, numPrimaries, marked, magnitudeType, includeColor, points);
+
+            // remember which stars of the tail were combined
+            for (int k = 0; k < block.size(); k++)
+            {
+                int t = tailIndex(k, position, blockSize, end, tailStart, tail.size());
+                if (t >= 0 && marked[k])
+                {
+                    tailMarked[t] = true;
+                }
+            }
+
+            // keep only the stars after the ones printed
+            block.truncate(blockSize);
+            block.removeFirst(numPrimaries);
+            System.arraycopy(marked, numPrimaries, marked, 0, blockSize - numPrimaries);
+            position += numPrimaries;
         }
     }
-    private static class normMagComp implements Comparator<Star>
+
+    // the index in the tail of star k of a block starting at the given
+    // position, or -1 if it is not in the tail. The first blockSize stars
+    // come from the sorted stars and any after that are the stars of the
+    // tail that come at or after position end.
+    private static int tailIndex(int k, long position, int blockSize, long end,
+                                 long tailStart, int tailSize)
     {
-        public int compare(Star a, Star b)
+        long t;
+        if (k < blockSize)
         {
-            return a.compareNormMag(b);
+            t = position + k - tailStart;
         }
-    }
-    private static class distComp implements Comparator<Star>
-    {
-        public int compare(Star a, Star b)
+        else
         {
-            return a.compareDist(b);
+            t = Math.max(end - tailStart, 0) + (k - blockSize);
         }
+        return (t >= 0 && t < tailSize) ? (int) t : -1;
     }
-    private static class RAComp implements Comparator<Star>
+
+    // read, sort, combine and print the stars of the CSV itself
+    private static void printFromCsv(File myFile, int chunkSize, int magnitudeType,
+                                     boolean includeColor, PointFile.Writer points) throws IOException
     {
-        public int compare(Star a, Star b)
-        {
-            return a.compareRA(b);
+        // only load the columns this run uses: the distance gives the
+        // normalized magnitude, and the color index is only needed for color
+        int columns = StarCatalog.RA + StarCatalog.DEC;
+        if (magnitudeType == 1) {
+          columns += StarCatalog.DISTANCE;
+        } else {
+          columns += StarCatalog.MAG;
+        }
+        if (includeColor) {
+          columns += StarCatalog.COLOR_INDEX;
+        }
+
+        // get the list of stars from the data file, which is memory-mapped
+        // and parsed without creating objects for each line. A first pass
+        // finds the stars too faint to be printed or to change a star that
+        // is, which are then never loaded.
+        try (HYGCsv csv = HYGCsv.open(myFile)) {
+            StarFilter filter = StarFilter.build(myFile, magnitudeType == 1, MAGNITUDE_THRESHOLD,
+                                                 CLOSE_DISTANCE, chunkSize);
+            StarCatalog myStars = StarCatalog.read(csv, columns, chunkSize, filter);
+            if (myStars.size() < chunkSize) {
+                // the whole catalog fits in memory, so sort them by right
+                // ascension and handle every star at once
+                myStars.sortByRA();
+                combineAndPrint(myStars, myStars.size(), new boolean[myStars.size()],
+                                magnitudeType, includeColor, points);
+            } else {
+                // otherwise sort pieces of it on disk and merge them
+                try (StarRuns runs = StarRuns.create(myStars, csv, filter, chunkSize,
+                                                     24.0 - 2*CLOSE_DISTANCE)) {
+                    myStars = null;
+                    combineAndPrintSorted(runs, columns, chunkSize, magnitudeType, includeColor,
+                                          points);
+                }
+            }
         }
     }
 
-    // Given a star's color index, return the visible color in RGB.
-    // Some code adapted from https://stackoverflow.com/questions/21977786/star-b-v-color-index-to-apparent-rgb-color
-    private static String getColorString(double colorIndex)
+    // combine and print the stars of a binary cache of the CSV, which is
+    // built first if it is missing or was built from a different CSV. The
+    // cached stars are already sorted and have their normalized magnitudes.
+    private static void printFromCache(File myFile, File cacheFile, int chunkSize, int magnitudeType,
+                                       boolean includeColor, PointFile.Writer points) throws IOException
     {
-        double bv = colorIndex;
-        if (bv < -0.40) {
-            bv = -0.40;
+        int columns = StarCatalog.RA + StarCatalog.DEC;
+        if (magnitudeType == 1) {
+          columns += StarCatalog.NORM_MAG;
+        } else {
+          columns += StarCatalog.MAG;
         }
-        if (bv > 2.00) {
-            bv = 2.00;
+        if (includeColor) {
+          columns += StarCatalog.COLOR_INDEX;
         }
 
-        double r = 0.0;
-        double g = 0.0;
-        double b = 0.0;
-        double t; // temp variable
-
-        // red
-        if (bv < 0.00) {
-            t = (bv + 0.40) / (0.00 + 0.40);
-            r = 0.61 + (0.11 * t) + (0.1 * t * t);
-        } else if (0.00 <= bv && bv < 0.40 ) {
-            t = (bv - 0.00) / (0.40 - 0.00);
-            r = 0.83 + (0.17 * t);
-        } else if (0.40 <= bv) {
-            t = (bv - 0.40) / (2.10 - 0.40);
-            r = 1.00;
+        double tailFrom = 24.0 - 2*CLOSE_DISTANCE;
+        StarCache cache = StarCache.open(cacheFile, myFile, columns, tailFrom);
+        if (cache == null) {
+            StarCache.build(cacheFile, myFile, chunkSize);
+            cache = StarCache.open(cacheFile, myFile, columns, tailFrom);
         }
-
-        // green
-        if (bv < 0.00) {
-            t = (bv + 0.40) / (0.00 + 0.40);
-            g = 0.70 + (0.07 * t) + (0.1 * t * t);
-        } else if (0.00 <= bv && bv < 0.40) {
-            t = (bv - 0.00) / (0.40 - 0.00);
-            g = 0.87 + (0.11 * t);
-        } else if (0.40 <= bv && bv < 1.60) {
-            t = (bv - 0.40) / (1.60 - 0.40);
-            g = 0.98 - (0.16 * t);
-        } else if (1.60 <= bv) {
-            t = (bv - 1.60) / (2.00 - 1.60);
-            g = 0.82 - (0.5 * t * t);
+        try (StarCache stars = cache) {
+            if (stars.size() < chunkSize) {
+                StarCatalog myStars = new StarCatalog(columns);
+                while (stars.hasNext()) {
+                    stars.next(myStars);
+                }
+                combineAndPrint(myStars, myStars.size(), new boolean[myStars.size()],
+                                magnitudeType, includeColor, points);
+            } else {
+                combineAndPrintSorted(stars, columns, chunkSize, magnitudeType, includeColor,
+                                      points);
+            }
         }
+    }
 
-        // blue
-        if (bv < 0.40) {
-            t = (bv + 0.40) / (0.40 + 0.40);
-            b = 1.00;
-        } else if (0.40 <= bv && bv < 1.50) {
-            t = (bv - 0.40) / (1.50 - 0.40);
-            b = 1.00 - (0.47 * t) + (0.1 * t * t);
-        } else if (1.50 <=  bv) {
-            t = (bv - 1.50) / (1.94 - 1.50);
-            b = 0.63 - (0.6 * t * t);
+    // throws if the option args[i] is not followed by count values
+    private static void checkValues(String[] args, int i, int count)
+    {
+        if (i + count >= args.length)
+        {
+            throw new IllegalArgumentException("Missing values for " + args[i]);
         }
-
-        // prevent some issues with the lower bound.
-        r = Math.max(r, 0.0);
-        g = Math.max(g, 0.0);
-        b = Math.max(b, 0.0);
-
-
-        int red = (int)(255.0*r);
-        int green = (int)(255.0*g);
-        int blue = (int)(255.0*b);
-        String colorString = red + " " + green + " " + blue;
-
-        return colorString;
     }
 
     // writes from k input files onto the blank file, then saves it as the final name
@@ -261,106 +520,67 @@ public class readHYGData
         if (includeColorInt == 1) {
           includeColor = true;
         }
-
-        Scanner myScanner;
-        int count = 0;
-        File myFile = new File(inputFilename);
-        // the number of stars in the HYG catalog
-        int size = 87475;
-
-        // the threshold of star magnitude to include (weak stars are ignored)
-        double magnitudeThreshold = 6.5;
-
-        Star[] myStars = new Star[size];
-        boolean[] marked = new boolean[size];
-        int i = 0;
-
-
-        // get the list of stars from the data file
-        Star temp;
-        try {
-            myScanner = new Scanner(myFile);
-            // get first line
-            String line = myScanner.nextLine();
-
-            // create a star for each line
-            while(myScanner.hasNextLine())
-            {
-                line = myScanner.nextLine();
-                temp = new Star(line);
-                myStars[i] = temp;
-                i++;
-
-            }
-            myScanner.close();
-        } catch (FileNotFoundException e) {
-        }
-
-        // sort start by right ascension
-        Arrays.sort(myStars, new RAComp());
-
-        // for each star
-        i = 0;
-
-        while (i < size)
+        // by default, sort in memory as long as the stars take up at most
+        // about a quarter of the memory available
+        int chunkSize = (int) Math.min(Math.max(Runtime.getRuntime().maxMemory() / 4 / 64, 1 << 16),
+                                       Integer.MAX_VALUE / 4);
+        File cacheFile = null;
+        File pointsFile = null;
+        boolean byMagnitude = false;
+        int argIndex = 3;
+        while (argIndex < args.length && args[argIndex].startsWith("-"))
         {
-            // if this star has already been handled (marked), skip it
-            if (marked[i] == false)
+            if (args[argIndex].equals("-chunk"))
             {
-                int n = 1;
-                double magToDraw;
-                if (magnitudeType == 1) {
-                  magToDraw = myStars[i].getNormMag();
-                } else {
-                  magToDraw = myStars[i].getMag();
-                }
-                // if there are any stars that are right next to this one
-                // (i.e. within 0.1 Right Ascension and Declination) then we
-                // combine their magnitudes into what appears to be one super
-                // star.
-                while ((i+n) < size-1 && Math.abs(myStars[i+n].getRA() - myStars[i].getRA()) < 0.01)
+                checkValues(args, argIndex, 1);
+                chunkSize = Integer.parseInt(args[argIndex+1]);
+                if (chunkSize < 1)
                 {
-                    if (Math.abs(myStars[i+n].getDec() - myStars[i].getDec()) < 0.01)
-                    {
-                        // uncomment to view which stars are close to eachother.
-                        // System.err.println(i+" ; "+(i+n));
-                        double newMag;
-                        if (magnitudeType == 1) {
-                          newMag = myStars[i+n].getNormMag();
-                        } else {
-                          newMag = myStars[i+n].getMag();
-                        }
-                        magToDraw = Math.log10(Math.pow(10,(-0.4*magToDraw))+Math.pow(10,(-0.4*newMag)))/-0.4;
-                        marked[n+i] = true;
-                    }
-                    n++;
+                    throw new IllegalArgumentException("Chunk size must be positive");
                 }
+                argIndex += 2;
+            }
+            else if (args[argIndex].equals("-points"))
+            {
+                checkValues(args, argIndex, 1);
+                pointsFile = new File(args[argIndex+1]);
+                argIndex += 2;
+            }
+            else if (args[argIndex].equals("-byMagnitude"))
+            {
+                byMagnitude = true;
+                argIndex++;
+            }
+            else if (args[argIndex].equals("-cache"))
+            {
+                checkValues(args, argIndex, 1);
+                cacheFile = new File(args[argIndex+1]);
+                argIndex += 2;
+            }
+            else
+            {
+                throw new IllegalArgumentException("Unknown option " + args[argIndex]);
+            }
+        }
 
-                // if the magnitude is below a threshold, aka the star is bright
-                // enough, then print the declination, a modified right
-                // ascension (to be more like longitude), and the magnitude.
-                if (magToDraw <= magnitudeThreshold)
-                {
-                    double modifiedRA = -360*(myStars[i].getRA()/24.0) + 180.0;
-                    int red;
-                    int green;
-                    int blue;
-                    double colorIndex = myStars[i].getColorIndex();
-                    String colorString;
-                    // if we include color and there is a color value,
-                    // determine the appropriate color.
-                    if (includeColor && (colorIndex != Double.NaN)) {
-                      colorString = getColorString(colorIndex);
-                    } else { // otherwise, just make the star white
-                      red = 255;
-                      green = 255;
-                      blue = 255;
-                      colorString = red + " " + green + " " + blue;
-                    }
-                    System.out.println(myStars[i].getDec() + " " + modifiedRA + " " + colorString + " " + magToDraw);
-                }
+        File myFile = new File(inputFilename);
+
+        try {
+            PointFile.Writer points = null;
+            if (pointsFile != null) {
+                points = new PointFile.Writer(pointsFile, true, byMagnitude);
+            }
+            if (cacheFile != null) {
+                printFromCache(myFile, cacheFile, chunkSize, magnitudeType, includeColor, points);
+            } else {
+                printFromCsv(myFile, chunkSize, magnitudeType, includeColor, points);
+            }
+            if (points != null) {
+                points.close();
+                System.err.println("Wrote " + points.size() + " stars to " + pointsFile);
             }
-            i++;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("File " + inputFilename + " is invalid");
         }
     }
 }